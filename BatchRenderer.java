@@ -0,0 +1,259 @@
+package com.example.raycastinggame;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Renders many independent camera poses of one Map as fast as the machine
+ * allows, for training data and automated visual checks. Each worker thread
+ * owns a single-threaded Renderer and draws whole frames with the same
+ * renderFrame() the game uses. Frame-level parallelism needs no barriers
+ * between stages, so it scales better than splitting one frame's columns.
+ *
+ * Frames are drawn into a fixed pool of FrameBuffers, two per worker, and
+ * handed to a FrameConsumer on the calling thread in pose order. Workers
+ * that get too far ahead of the consumer wait for a buffer to come back,
+ * so a slow consumer bounds memory instead of growing a queue.
+ *
+ * Renderers may share what setup gives them (atlases, sprites, a lightmap,
+ * visible sets) as they only read it. A lightmap is re-baked in place, so
+ * render() brings it up to the map's current version before any worker
+ * starts, and workers then find nothing to re-bake; don't edit the map
+ * during a batch that uses one.
+ */
+final class BatchRenderer {
+    // Buffers in the pool per worker: one being drawn, one waiting or consumed
+    private static final int BUFFERS_PER_WORKER = 2;
+
+    /** Takes each finished frame; the buffer is reused once accept returns. */
+    interface FrameConsumer {
+        void accept(int index, FrameBuffer frame) throws IOException;
+    }
+
+    /** How long a batch took. */
+    static final class Result {
+        final int frames;
+        final long nanos;
+        // Summed over workers, so renderNanos / nanos is how many were busy
+        final long renderNanos;
+
+        Result(int frames, long nanos, long renderNanos) {
+            this.frames = frames;
+            this.nanos = nanos;
+            this.renderNanos = renderNanos;
+        }
+
+        double getFramesPerSecond() {
+            return frames * 1_000_000_000.0 / nanos;
+        }
+    }
+
+    private final Map map;
+    private final Renderer[] renderers;
+    private final FrameBuffer[] buffers;
+    private final ExecutorService workers;
+
+    /**
+     * @param threads workers, each with its own Renderer; availableProcessors() keeps every core busy
+     * @param setup   called once on each new Renderer to set textures, sprites, shading and so on
+     */
+    BatchRenderer(Map map, int width, int height, int threads, Consumer<Renderer> setup) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.map = map;
+        // Renderers only read a Player in render(), which a batch never calls
+        Player unused = new Player(0.5, 0.5, 1, 0);
+        renderers = new Renderer[threads];
+        for (int i = 0; i < threads; i++) {
+            Renderer renderer = new Renderer(map, unused, width, height);
+            renderer.setMode(RenderMode.FRAMEBUFFER);
+            setup.accept(renderer);
+            if (renderer.getThreadCount() != 1) {
+                throw new IllegalArgumentException("Batch renderers must stay single-threaded");
+            }
+            renderers[i] = renderer;
+        }
+        buffers = new FrameBuffer[threads * BUFFERS_PER_WORKER];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new FrameBuffer(width * height);
+        }
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "raycast-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Render every pose and hand the frames to consumer, in order, on this
+     * thread. Returns once the last frame has been consumed. A failing
+     * worker or consumer stops the batch and is rethrown here.
+     */
+    Result render(List<CameraPose> poses, FrameConsumer consumer) throws IOException {
+        int count = poses.size();
+        int slots = buffers.length;
+        // A worker takes a free buffer before claiming the next pose, so at
+        // most slots poses are claimed and not yet consumed. They are
+        // consecutive, and pose i can always use buffer i % slots.
+        Semaphore free = new Semaphore(slots);
+        Semaphore[] ready = new Semaphore[slots];
+        for (int i = 0; i < slots; i++) {
+            ready[i] = new Semaphore(0);
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong renderNanos = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Re-bake here, on one thread, so no worker writes a lightmap that
+        // the others are reading; submitting the workers publishes it
+        MapSnapshot tiles = map.snapshot();
+        for (Renderer renderer : renderers) {
+            Lightmap lightmap = renderer.getLightmap();
+            if (lightmap != null) {
+                lightmap.refresh(tiles);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Future<Void>> running = new ArrayList<>();
+        for (Renderer renderer : renderers) {
+            running.add(workers.submit(() -> {
+                while (true) {
+                    free.acquire();
+                    int index = next.getAndIncrement();
+                    if (index >= count) {
+                        free.release();
+                        return null;
+                    }
+                    int slot = index % slots;
+                    long frameStart = System.nanoTime();
+                    try {
+                        renderer.renderFrame(poses.get(index), buffers[slot]);
+                    } catch (RuntimeException | Error e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        // Even a failed frame is handed over, so the consumer
+                        // side wakes up and finds the failure
+                        renderNanos.addAndGet(System.nanoTime() - frameStart);
+                        ready[slot].release();
+                    }
+                }
+            }));
+        }
+
+        boolean consumed = false;
+        try {
+            for (int index = 0; index < count; index++) {
+                int slot = index % slots;
+                ready[slot].acquire();
+                if (failure.get() != null) {
+                    throw new IllegalStateException("Batch worker failed", failure.get());
+                }
+                consumer.accept(index, buffers[slot]);
+                free.release();
+            }
+            consumed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering a batch", e);
+        } finally {
+            // Let any worker still waiting for a buffer see the end, and
+            // never return while one is drawing: the next batch reuses its
+            // Renderer
+            next.set(count);
+            free.release(renderers.length);
+            awaitAll(running, consumed);
+        }
+        return new Result(count, System.nanoTime() - start, renderNanos.get());
+    }
+
+    void shutdown() {
+        workers.shutdownNow();
+        for (Renderer renderer : renderers) {
+            renderer.shutdown();
+        }
+    }
+
+    // Wait for every worker to stop, rethrowing a failure only when the
+    // batch is otherwise done; a batch already failing keeps its own error
+    private static void awaitAll(List<Future<Void>> running, boolean rethrow) {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<Void> worker : running) {
+            while (true) {
+                try {
+                    worker.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    failure = failure != null ? failure : e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (rethrow && failure != null) {
+            throw new IllegalStateException("Batch worker failed", failure);
+        }
+    }
+
+    /**
+     * Writes frames back to back as raw 8-bit RGB rows, top to bottom, with
+     * no header: what ffmpeg reads as -f rawvideo -pix_fmt rgb24.
+     */
+    static final class RawWriter implements FrameConsumer, Closeable {
+        private final OutputStream stream;
+        private byte[] row = new byte[0];
+
+        RawWriter(Path file) throws IOException {
+            this.stream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        }
+
+        @Override
+        public void accept(int index, FrameBuffer frame) throws IOException {
+            int width = frame.width;
+            int height = frame.height;
+            if (row.length < width * 3) {
+                row = new byte[width * 3];
+            }
+            int[] pixels = frame.pixels;
+            // Column-major frames are read across, a column's height apart
+            int step = frame.columnMajor ? height : 1;
+            for (int y = 0; y < height; y++) {
+                int i = frame.columnMajor ? y : y * width;
+                for (int x = 0, b = 0; x < width; x++, i += step) {
+                    int argb = pixels[i];
+                    row[b++] = (byte)(argb >> 16);
+                    row[b++] = (byte)(argb >> 8);
+                    row[b++] = (byte)argb;
+                }
+                stream.write(row, 0, width * 3);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
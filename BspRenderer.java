@@ -0,0 +1,303 @@
+package com.example.raycastinggame;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A second engine beside the grid Renderer: draws a level of line-segment
+ * walls from a BspTree instead of casting rays through Map cells. It uses
+ * the same Player camera, direction plus a plane across it, so one level
+ * can be drawn both ways and the engines timed against each other.
+ *
+ * The tree is walked front to back, nearer side of each splitter first.
+ * Every segment that comes up is projected to the columns it could cover,
+ * and each column still open is intersected with its ray; the first
+ * segment to hit a column is the nearest one there, so it is drawn and the
+ * column closed. Closed columns are skipped through a union-find of the
+ * next open column, subtrees whose bounds only reach closed columns or lie
+ * outside the view are passed over, and the walk stops once every column
+ * is closed.
+ *
+ * Walls are drawn flat in the grid Renderer's colours, darker where a
+ * segment runs closer to x than to y as y-sides are, under the same flat
+ * ceiling and floor. On a level made with BspTree.segmentsOf its frames
+ * match the grid Renderer's with textures and floor casting off.
+ */
+final class BspRenderer {
+    // Nearest depth projected; segment ends closer than this are clipped
+    private static final double NEAR = 1e-4;
+    // Slack at segment ends, so a ray through the point two segments share
+    // never slips between them
+    private static final double END_SLACK = 1e-9;
+
+    // The grid Renderer's flat colours
+    private static final Color CEILING_COLOR = Color.DARKBLUE;
+    private static final Color FLOOR_COLOR = Color.DARKGRAY;
+    private static final Color[] WALL_COLORS = {
+            Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW
+    };
+
+    private final BspTree tree;
+    private final Player player;
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final double[] cameraXs;
+
+    // Next open column at or after each column; width is always open
+    private final int[] nextOpen;
+    // Nodes still to walk, and ~node for a node's own segments
+    private final int[] stack;
+
+    private final int ceilingArgb;
+    private final int floorArgb;
+    private final int[] wallArgb;
+    private final int[] wallArgbDark;
+
+    // Camera of the frame being drawn
+    private double posX;
+    private double posY;
+    private double dirX;
+    private double dirY;
+    private double planeX;
+    private double planeY;
+    private double invDet;
+
+    private int nodesVisited;
+    private int segmentsTested;
+
+    BspRenderer(BspTree tree, Player player, int width, int height) {
+        this.tree = tree;
+        this.player = player;
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        this.cameraXs = new double[width];
+        for (int x = 0; x < width; x++) {
+            cameraXs[x] = 2 * x / (double)width - 1; // x-coordinate in camera space
+        }
+        this.nextOpen = new int[width + 1];
+        // Each level down leaves at most the far child and the node's segments
+        this.stack = new int[2 * tree.getDepth() + 1];
+
+        this.ceilingArgb = Renderer.toArgb(CEILING_COLOR);
+        this.floorArgb = Renderer.toArgb(FLOOR_COLOR);
+        this.wallArgb = new int[WALL_COLORS.length];
+        this.wallArgbDark = new int[WALL_COLORS.length];
+        for (int i = 0; i < WALL_COLORS.length; i++) {
+            wallArgb[i] = Renderer.toArgb(WALL_COLORS[i]);
+            wallArgbDark[i] = Renderer.toArgb(WALL_COLORS[i].darker());
+        }
+    }
+
+    /** Render the player's current camera. */
+    void renderFrame() {
+        renderFrame(player.snapshot(1));
+    }
+
+    void renderFrame(CameraPose pose) {
+        posX = pose.x;
+        posY = pose.y;
+        dirX = pose.dirX;
+        dirY = pose.dirY;
+        planeX = pose.planeX;
+        planeY = pose.planeY;
+        invDet = 1.0 / (planeX * dirY - dirX * planeY);
+        nodesVisited = 0;
+        segmentsTested = 0;
+
+        final int[] nextOpen = this.nextOpen;
+        for (int x = 0; x <= width; x++) {
+            nextOpen[x] = x;
+        }
+        int open = width;
+
+        final BspTree tree = this.tree;
+        final int[] stack = this.stack;
+        int size = 0;
+        if (tree.root >= 0) {
+            stack[size++] = tree.root;
+        }
+        while (size > 0 && open > 0) {
+            int entry = stack[--size];
+            if (entry < 0) {
+                open -= drawSegments(~entry);
+                continue;
+            }
+            nodesVisited++;
+            if (!boundsVisible(entry)) {
+                continue;
+            }
+            boolean inFront = BspTree.side(tree.lineXs[entry], tree.lineYs[entry],
+                    tree.lineDxs[entry], tree.lineDys[entry], posX, posY) >= 0;
+            int near = inFront ? tree.fronts[entry] : tree.backs[entry];
+            int far = inFront ? tree.backs[entry] : tree.fronts[entry];
+            if (far >= 0) {
+                stack[size++] = far;
+            }
+            stack[size++] = ~entry;
+            if (near >= 0) {
+                stack[size++] = near;
+            }
+        }
+
+        // Columns no wall reached: ceiling to the horizon, floor below
+        for (int x = findOpen(0); x < width; x = findOpen(x + 1)) {
+            drawColumn(x, height / 2, height / 2 - 1, 0);
+        }
+    }
+
+    // Draw the segments on a node's splitter into the open columns they
+    // hit; returns how many columns they closed
+    private int drawSegments(int node) {
+        final BspTree tree = this.tree;
+        final double[] cameraXs = this.cameraXs;
+        final int[] nextOpen = this.nextOpen;
+        int closed = 0;
+        for (int s = tree.firstSegments[node]; s < tree.segmentEnds[node]; s++) {
+            segmentsTested++;
+            double x0 = tree.segmentX0s[s];
+            double y0 = tree.segmentY0s[s];
+            double ex = tree.segmentX1s[s] - x0;
+            double ey = tree.segmentY1s[s] - y0;
+
+            // Columns between the projected ends, clipped to the near plane
+            double across0 = cameraAcross(x0 - posX, y0 - posY);
+            double depth0 = cameraDepth(x0 - posX, y0 - posY);
+            double across1 = cameraAcross(x0 + ex - posX, y0 + ey - posY);
+            double depth1 = cameraDepth(x0 + ex - posX, y0 + ey - posY);
+            if (depth0 < NEAR && depth1 < NEAR) {
+                continue;
+            }
+            if (depth0 < NEAR) {
+                across0 += (NEAR - depth0) / (depth1 - depth0) * (across1 - across0);
+                depth0 = NEAR;
+            } else if (depth1 < NEAR) {
+                across1 += (NEAR - depth1) / (depth0 - depth1) * (across0 - across1);
+                depth1 = NEAR;
+            }
+            double screen0 = width / 2.0 * (1 + across0 / depth0);
+            double screen1 = width / 2.0 * (1 + across1 / depth1);
+            int from = Math.max(0, (int)Math.floor(Math.min(screen0, screen1)));
+            int to = Math.min(width - 1, (int)Math.ceil(Math.max(screen0, screen1)));
+            if (from > to) {
+                continue;
+            }
+
+            // Where column x's ray, pos + t * (dir + plane * cameraX), meets
+            // x0 + s * e: t = distance / denominator, s = along / denominator,
+            // both linear in cameraX
+            double qx = x0 - posX;
+            double qy = y0 - posY;
+            double distance = qx * ey - qy * ex;
+            double denominatorBase = dirX * ey - dirY * ex;
+            double denominatorStep = planeX * ey - planeY * ex;
+            double alongBase = qx * dirY - qy * dirX;
+            double alongStep = qx * planeY - qy * planeX;
+
+            int value = tree.segmentValues[s] % wallArgb.length;
+            int wall = Math.abs(ex) > Math.abs(ey) ? wallArgbDark[value] : wallArgb[value];
+            for (int x = findOpen(from); x <= to; x = findOpen(x + 1)) {
+                double denominator = denominatorBase + denominatorStep * cameraXs[x];
+                if (denominator == 0) {
+                    continue;
+                }
+                double t = distance / denominator;
+                double along = (alongBase + alongStep * cameraXs[x]) / denominator;
+                if (!(t >= 0) || along < -END_SLACK || along > 1 + END_SLACK) {
+                    continue;
+                }
+
+                // Same stripe as the grid Renderer for a wall at distance t
+                int lineHeight = t > 0 ? (int)(height / t) : height;
+                int drawStart = -lineHeight / 2 + height / 2;
+                if (drawStart < 0) drawStart = 0;
+                int drawEnd = lineHeight / 2 + height / 2;
+                if (drawEnd >= height) drawEnd = height - 1;
+                drawColumn(x, drawStart, drawEnd, wall);
+
+                nextOpen[x] = x + 1;
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    // Whether a node's bounds could reach an open column in front of the camera
+    private boolean boundsVisible(int node) {
+        final BspTree tree = this.tree;
+        double minX = tree.minXs[node];
+        double minY = tree.minYs[node];
+        double maxX = tree.maxXs[node];
+        double maxY = tree.maxYs[node];
+        if (posX >= minX && posX <= maxX && posY >= minY && posY <= maxY) {
+            return true;
+        }
+
+        double lowest = Double.POSITIVE_INFINITY;
+        double highest = Double.NEGATIVE_INFINITY;
+        int behind = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            double dx = ((corner & 1) == 0 ? minX : maxX) - posX;
+            double dy = ((corner & 2) == 0 ? minY : maxY) - posY;
+            double depth = cameraDepth(dx, dy);
+            if (depth < NEAR) {
+                behind++;
+                continue;
+            }
+            double screen = width / 2.0 * (1 + cameraAcross(dx, dy) / depth);
+            lowest = Math.min(lowest, screen);
+            highest = Math.max(highest, screen);
+        }
+        if (behind == 4) {
+            return false;
+        }
+        // Reaching behind the camera, the bounds could cover any column
+        int from = behind > 0 ? 0 : Math.max(0, (int)Math.floor(lowest));
+        int to = behind > 0 ? width - 1 : Math.min(width - 1, (int)Math.ceil(highest));
+        return from <= to && findOpen(from) <= to;
+    }
+
+    // Camera space of an offset from the camera, through the inverse of the
+    // [plane dir] matrix: depth along dir, and across along the plane
+    private double cameraAcross(double dx, double dy) {
+        return invDet * (dirY * dx - dirX * dy);
+    }
+
+    private double cameraDepth(double dx, double dy) {
+        return invDet * (-planeY * dx + planeX * dy);
+    }
+
+    // The first open column at or after x, halving the paths it walks
+    private int findOpen(int x) {
+        final int[] nextOpen = this.nextOpen;
+        while (nextOpen[x] != x) {
+            nextOpen[x] = nextOpen[nextOpen[x]];
+            x = nextOpen[x];
+        }
+        return x;
+    }
+
+    // Ceiling above drawStart, wall to drawEnd and floor below, in column x
+    private void drawColumn(int x, int drawStart, int drawEnd, int wall) {
+        final int[] pixels = this.pixels;
+        int i = x;
+        for (int y = 0; y < drawStart; y++, i += width) {
+            pixels[i] = ceilingArgb;
+        }
+        for (int y = drawStart; y <= drawEnd; y++, i += width) {
+            pixels[i] = wall;
+        }
+        for (int y = drawEnd + 1; y < height; y++, i += width) {
+            pixels[i] = floorArgb;
+        }
+    }
+
+    /** The last frame, row-major ARGB. */
+    int[] getPixels() { return pixels; }
+    int getScreenWidth() { return width; }
+    int getScreenHeight() { return height; }
+    /** Tree nodes the last frame walked into, culled ones included. */
+    int getNodesVisited() { return nodesVisited; }
+    /** Segments the last frame projected. */
+    int getSegmentsTested() { return segmentsTested; }
+}
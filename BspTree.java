@@ -0,0 +1,357 @@
+package com.example.raycastinggame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wall segments partitioned by a binary space partition tree, built once
+ * when a level is loaded and never changed. Each node splits the plane
+ * along the line through one segment and keeps every segment on that line;
+ * segments crossing it are cut in two. Walking the tree nearer side first
+ * visits segments front to back from any viewpoint, which is the order
+ * BspRenderer draws them in.
+ *
+ * Nodes and segments are stored as parallel arrays, segments grouped by
+ * node, and each node keeps the bounds of its whole subtree so a renderer
+ * can pass over subtrees it can't see.
+ */
+final class BspTree {
+    // Points closer to a splitter line than this lie on it
+    private static final double EPSILON = 1e-9;
+
+    // Splitters tried per node, spread evenly over its segments, scored on
+    // up to SAMPLES of them; a cut costs as much as SPLIT_COST segments of
+    // imbalance between the two sides
+    private static final int CANDIDATES = 8;
+    private static final int SAMPLES = 256;
+    private static final int SPLIT_COST = 8;
+
+    // Per node: a point on the splitter line and its unit direction; front
+    // is to the left of the direction. Children are -1 when empty.
+    final double[] lineXs;
+    final double[] lineYs;
+    final double[] lineDxs;
+    final double[] lineDys;
+    final int[] fronts;
+    final int[] backs;
+    // Segments on the splitter line: [firstSegments, segmentEnds)
+    final int[] firstSegments;
+    final int[] segmentEnds;
+    // Bounds of every segment in the subtree
+    final double[] minXs;
+    final double[] minYs;
+    final double[] maxXs;
+    final double[] maxYs;
+
+    // Segments in node order
+    final double[] segmentX0s;
+    final double[] segmentY0s;
+    final double[] segmentX1s;
+    final double[] segmentY1s;
+    final int[] segmentValues;
+
+    final int root;
+    private final int nodeCount;
+    private final int segmentCount;
+    private final int depth;
+    private final int splits;
+
+    private BspTree(Builder builder, int root) {
+        this.root = root;
+        this.nodeCount = builder.nodes;
+        this.segmentCount = builder.segments;
+        this.depth = builder.depth;
+        this.splits = builder.splits;
+        this.lineXs = trim(builder.lineXs, nodeCount);
+        this.lineYs = trim(builder.lineYs, nodeCount);
+        this.lineDxs = trim(builder.lineDxs, nodeCount);
+        this.lineDys = trim(builder.lineDys, nodeCount);
+        this.fronts = trim(builder.fronts, nodeCount);
+        this.backs = trim(builder.backs, nodeCount);
+        this.firstSegments = trim(builder.firstSegments, nodeCount);
+        this.segmentEnds = trim(builder.segmentEnds, nodeCount);
+        this.minXs = trim(builder.minXs, nodeCount);
+        this.minYs = trim(builder.minYs, nodeCount);
+        this.maxXs = trim(builder.maxXs, nodeCount);
+        this.maxYs = trim(builder.maxYs, nodeCount);
+        this.segmentX0s = trim(builder.segmentX0s, segmentCount);
+        this.segmentY0s = trim(builder.segmentY0s, segmentCount);
+        this.segmentX1s = trim(builder.segmentX1s, segmentCount);
+        this.segmentY1s = trim(builder.segmentY1s, segmentCount);
+        this.segmentValues = trim(builder.segmentValues, segmentCount);
+    }
+
+    /** The tree for segments; root is -1 when there are none. */
+    static BspTree build(List<Segment> segments) {
+        Builder builder = new Builder();
+        int root = builder.build(new ArrayList<>(segments), 0);
+        return new BspTree(builder, root);
+    }
+
+    /**
+     * The walls of a grid map as segments: every face between a wall and
+     * an open cell, the map's solid border included, with runs of faces
+     * along one line that face the same way and share a tile value merged
+     * into one segment. Drawn by BspRenderer, they show what the grid
+     * Renderer shows with flat colours. Glass, grates and doors have no
+     * segment form, so a map holding any is refused.
+     */
+    static List<Segment> segmentsOf(Map map) {
+        MapSnapshot tiles = map.snapshot();
+        int width = tiles.getWidth();
+        int height = tiles.getHeight();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int tile = tiles.tileAt(tiles.index(x, y));
+                if (Map.isSeeThrough(tile) || tile == Map.DOOR) {
+                    throw new IllegalArgumentException("Tile (" + x + ", " + y + ") is glass, a grate or a door,"
+                            + " which BSP levels don't have");
+                }
+            }
+        }
+        List<Segment> segments = new ArrayList<>();
+
+        // Horizontal faces along y = line, between rows line - 1 and line
+        for (int line = 0; line <= height; line++) {
+            int runStart = 0;
+            int runKey = 0;
+            for (int x = 0; x <= width; x++) {
+                int key = x < width ? faceKey(tiles, tiles.index(x, line - 1), tiles.index(x, line)) : 0;
+                if (key != runKey) {
+                    if (runKey != 0) {
+                        segments.add(new Segment(runStart, line, x, line, runKey >> 1));
+                    }
+                    runStart = x;
+                    runKey = key;
+                }
+            }
+        }
+
+        // Vertical faces along x = line, between columns line - 1 and line
+        for (int line = 0; line <= width; line++) {
+            int runStart = 0;
+            int runKey = 0;
+            for (int y = 0; y <= height; y++) {
+                int key = y < height ? faceKey(tiles, tiles.index(line - 1, y), tiles.index(line, y)) : 0;
+                if (key != runKey) {
+                    if (runKey != 0) {
+                        segments.add(new Segment(line, runStart, line, y, runKey >> 1));
+                    }
+                    runStart = y;
+                    runKey = key;
+                }
+            }
+        }
+        return segments;
+    }
+
+    // The face between two padded cells, as the wall's tile value and
+    // which of the two is the wall; 0 when both or neither are walls
+    private static int faceKey(MapSnapshot tiles, int before, int after) {
+        boolean wallBefore = tiles.tileAt(before) == Map.WALL;
+        boolean wallAfter = tiles.tileAt(after) == Map.WALL;
+        if (wallBefore == wallAfter) {
+            return 0;
+        }
+        return wallBefore ? (tiles.tileAt(before) & 0xFF) << 1 : (tiles.tileAt(after) & 0xFF) << 1 | 1;
+    }
+
+    int getNodeCount() { return nodeCount; }
+    int getSegmentCount() { return segmentCount; }
+    int getDepth() { return depth; }
+    /** How many times building cut a segment in two. */
+    int getSplits() { return splits; }
+
+    // Grows the node and segment arrays as the tree is built depth first
+    private static final class Builder {
+        double[] lineXs = new double[64];
+        double[] lineYs = new double[64];
+        double[] lineDxs = new double[64];
+        double[] lineDys = new double[64];
+        int[] fronts = new int[64];
+        int[] backs = new int[64];
+        int[] firstSegments = new int[64];
+        int[] segmentEnds = new int[64];
+        double[] minXs = new double[64];
+        double[] minYs = new double[64];
+        double[] maxXs = new double[64];
+        double[] maxYs = new double[64];
+        int nodes;
+
+        double[] segmentX0s = new double[64];
+        double[] segmentY0s = new double[64];
+        double[] segmentX1s = new double[64];
+        double[] segmentY1s = new double[64];
+        int[] segmentValues = new int[64];
+        int segments;
+
+        int depth;
+        int splits;
+
+        // Node for segments, which it may reorder, or -1 when empty
+        int build(List<Segment> segments, int level) {
+            if (segments.isEmpty()) {
+                return -1;
+            }
+            depth = Math.max(depth, level + 1);
+
+            Segment splitter = chooseSplitter(segments);
+            double length = Math.hypot(splitter.x1 - splitter.x0, splitter.y1 - splitter.y0);
+            double px = splitter.x0;
+            double py = splitter.y0;
+            double dx = (splitter.x1 - splitter.x0) / length;
+            double dy = (splitter.y1 - splitter.y0) / length;
+
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            List<Segment> front = new ArrayList<>();
+            List<Segment> back = new ArrayList<>();
+            List<Segment> on = new ArrayList<>();
+            for (Segment segment : segments) {
+                minX = Math.min(minX, Math.min(segment.x0, segment.x1));
+                minY = Math.min(minY, Math.min(segment.y0, segment.y1));
+                maxX = Math.max(maxX, Math.max(segment.x0, segment.x1));
+                maxY = Math.max(maxY, Math.max(segment.y0, segment.y1));
+
+                double side0 = side(px, py, dx, dy, segment.x0, segment.y0);
+                double side1 = side(px, py, dx, dy, segment.x1, segment.y1);
+                if (Math.abs(side0) <= EPSILON && Math.abs(side1) <= EPSILON) {
+                    on.add(segment);
+                } else if (side0 >= -EPSILON && side1 >= -EPSILON) {
+                    front.add(segment);
+                } else if (side0 <= EPSILON && side1 <= EPSILON) {
+                    back.add(segment);
+                } else {
+                    // Cut where it crosses the line
+                    double t = side0 / (side0 - side1);
+                    double x = segment.x0 + t * (segment.x1 - segment.x0);
+                    double y = segment.y0 + t * (segment.y1 - segment.y0);
+                    Segment first = new Segment(segment.x0, segment.y0, x, y, segment.value);
+                    Segment second = new Segment(x, y, segment.x1, segment.y1, segment.value);
+                    (side0 > 0 ? front : back).add(first);
+                    (side0 > 0 ? back : front).add(second);
+                    splits++;
+                }
+            }
+            segments.clear();
+
+            int node = nodes++;
+            growNodes();
+            lineXs[node] = px;
+            lineYs[node] = py;
+            lineDxs[node] = dx;
+            lineDys[node] = dy;
+            minXs[node] = minX;
+            minYs[node] = minY;
+            maxXs[node] = maxX;
+            maxYs[node] = maxY;
+            firstSegments[node] = this.segments;
+            for (Segment segment : on) {
+                addSegment(segment);
+            }
+            segmentEnds[node] = this.segments;
+
+            int frontChild = build(front, level + 1);
+            int backChild = build(back, level + 1);
+            fronts[node] = frontChild;
+            backs[node] = backChild;
+            return node;
+        }
+
+        // The candidate line that cuts fewest segments and splits the rest
+        // most evenly
+        private static Segment chooseSplitter(List<Segment> segments) {
+            int count = segments.size();
+            int step = Math.max(1, count / CANDIDATES);
+            int sampleStep = Math.max(1, count / SAMPLES);
+            Segment best = null;
+            long bestCost = Long.MAX_VALUE;
+            for (int i = 0; i < count && bestCost > 0; i += step) {
+                Segment candidate = segments.get(i);
+                double length = Math.hypot(candidate.x1 - candidate.x0, candidate.y1 - candidate.y0);
+                double dx = (candidate.x1 - candidate.x0) / length;
+                double dy = (candidate.y1 - candidate.y0) / length;
+                int front = 0;
+                int back = 0;
+                int cut = 0;
+                for (int j = 0; j < count; j += sampleStep) {
+                    Segment segment = segments.get(j);
+                    double side0 = side(candidate.x0, candidate.y0, dx, dy, segment.x0, segment.y0);
+                    double side1 = side(candidate.x0, candidate.y0, dx, dy, segment.x1, segment.y1);
+                    if (Math.abs(side0) <= EPSILON && Math.abs(side1) <= EPSILON) {
+                        continue;
+                    }
+                    if (side0 >= -EPSILON && side1 >= -EPSILON) {
+                        front++;
+                    } else if (side0 <= EPSILON && side1 <= EPSILON) {
+                        back++;
+                    } else {
+                        cut++;
+                    }
+                }
+                long cost = (long)cut * SPLIT_COST + Math.abs(front - back);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+
+        private void addSegment(Segment segment) {
+            if (segments == segmentValues.length) {
+                int capacity = segments * 2;
+                segmentX0s = Arrays.copyOf(segmentX0s, capacity);
+                segmentY0s = Arrays.copyOf(segmentY0s, capacity);
+                segmentX1s = Arrays.copyOf(segmentX1s, capacity);
+                segmentY1s = Arrays.copyOf(segmentY1s, capacity);
+                segmentValues = Arrays.copyOf(segmentValues, capacity);
+            }
+            segmentX0s[segments] = segment.x0;
+            segmentY0s[segments] = segment.y0;
+            segmentX1s[segments] = segment.x1;
+            segmentY1s[segments] = segment.y1;
+            segmentValues[segments] = segment.value;
+            segments++;
+        }
+
+        private void growNodes() {
+            if (nodes <= fronts.length) {
+                return;
+            }
+            int capacity = fronts.length * 2;
+            lineXs = Arrays.copyOf(lineXs, capacity);
+            lineYs = Arrays.copyOf(lineYs, capacity);
+            lineDxs = Arrays.copyOf(lineDxs, capacity);
+            lineDys = Arrays.copyOf(lineDys, capacity);
+            fronts = Arrays.copyOf(fronts, capacity);
+            backs = Arrays.copyOf(backs, capacity);
+            firstSegments = Arrays.copyOf(firstSegments, capacity);
+            segmentEnds = Arrays.copyOf(segmentEnds, capacity);
+            minXs = Arrays.copyOf(minXs, capacity);
+            minYs = Arrays.copyOf(minYs, capacity);
+            maxXs = Arrays.copyOf(maxXs, capacity);
+            maxYs = Arrays.copyOf(maxYs, capacity);
+        }
+    }
+
+    /**
+     * Which side of the line through (px, py) with unit direction (dx, dy)
+     * the point (x, y) lies on, as a signed distance: positive in front, to
+     * the left of the direction.
+     */
+    static double side(double px, double py, double dx, double dy, double x, double y) {
+        return dx * (y - py) - dy * (x - px);
+    }
+
+    private static double[] trim(double[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    private static int[] trim(int[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.raycastinggame;
+
+// Immutable camera for one rendered frame: position, direction and plane,
+// and the Player version it shows. Safe to hand to the render thread.
+final class CameraPose {
+    // version of a pose interpolated between two different steps
+    static final long IN_BETWEEN = -1;
+
+    final double x;
+    final double y;
+    final double dirX;
+    final double dirY;
+    final double planeX;
+    final double planeY;
+    final long version;
+
+    CameraPose(double x, double y, double dirX, double dirY, double planeX, double planeY, long version) {
+        this.x = x;
+        this.y = y;
+        this.dirX = dirX;
+        this.dirY = dirY;
+        this.planeX = planeX;
+        this.planeY = planeY;
+        this.version = version;
+    }
+}
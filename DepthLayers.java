@@ -0,0 +1,10 @@
+package com.example.raycastinggame;
+
+/**
+ * See-through faces the sprite pass composites between sprites, by depth,
+ * so each column still goes back to front.
+ */
+interface DepthLayers {
+    /** Blend the faces of column x farther than depth that aren't blended yet. */
+    void blendBehind(int x, double depth);
+}
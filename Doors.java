@@ -0,0 +1,180 @@
+package com.example.raycastinggame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Doors that slide open and shut over time, moved on by the fixed
+ * simulation step. A door is one cell of the Map: a DOOR tile from the
+ * moment it starts to shut until it has opened all the way, open floor in
+ * between. Collision and the lightmap see only the tile, so a moving door
+ * blocks the player and light like a wall.
+ *
+ * Rays see the swing. The Renderer draws a DOOR tile as a slab across the
+ * middle of its cell, slid aside by how far the door has opened, and reads
+ * that from getOpenings(), published after every step that moves a door.
+ * The tile itself changes twice per swing, not every step, so the lightmap
+ * and visible sets are reworked twice too.
+ *
+ * Edited on the simulation thread, like every other tile.
+ */
+final class Doors {
+    // Tile of an open door
+    private static final int OPEN = 0;
+
+    private static final class Door {
+        final int x;
+        final int y;
+        // 0 shut to 1 open, and which way it is moving: +1, -1 or 0
+        double openness;
+        int direction;
+
+        Door(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * How far open each part-open door is, by padded cell index, as one
+     * frame draws them. Never changed once published.
+     */
+    static final class Openings {
+        static final Openings NONE = new Openings(new int[0], new double[0], 0);
+
+        private final int[] indexes;
+        private final double[] amounts;
+        final long version;
+
+        private Openings(int[] indexes, double[] amounts, long version) {
+            this.indexes = indexes;
+            this.amounts = amounts;
+            this.version = version;
+        }
+
+        /** From 0 shut to 1 open; 0 for a cell that is no part-open door. */
+        double at(int index) {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] == index) {
+                    return amounts[i];
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final Map map;
+    private final double seconds;
+    private final List<Door> doors = new ArrayList<>();
+    private volatile Openings openings = Openings.NONE;
+
+    /** @param seconds how long a door takes to open or close */
+    Doors(Map map, double seconds) {
+        if (!(seconds > 0)) {
+            throw new IllegalArgumentException("seconds must be positive: " + seconds);
+        }
+        this.map = map;
+        this.seconds = seconds;
+    }
+
+    /** Make cell (x, y) a shut door. */
+    void add(int x, int y) {
+        if (find(x, y) != null) {
+            return;
+        }
+        map.setTile(x, y, Map.DOOR);
+        doors.add(new Door(x, y));
+    }
+
+    boolean isDoor(int x, int y) {
+        return find(x, y) != null;
+    }
+
+    /** How far open the door at (x, y) is, from 0 to 1; 0 where there is none. */
+    double getOpenness(int x, int y) {
+        Door door = find(x, y);
+        return door == null ? 0 : door.openness;
+    }
+
+    /**
+     * Start the door at (x, y) opening if it is shut or closing, and closing
+     * if it is open or opening. False when there is no door there.
+     */
+    boolean toggle(int x, int y) {
+        Door door = find(x, y);
+        if (door == null) {
+            return false;
+        }
+        boolean opening = door.direction > 0 || (door.direction == 0 && door.openness >= 1);
+        door.direction = opening ? -1 : 1;
+        return true;
+    }
+
+    /** The part-open doors as of the last step; safe to read from any thread. */
+    Openings getOpenings() {
+        return openings;
+    }
+
+    /**
+     * Move every door on by one step. A door turns into open floor when it
+     * finishes opening and back into a DOOR tile as it starts to shut, but
+     * never onto the player: it waits, open, until they step out.
+     */
+    void update(double deltaTime, Player player) {
+        double amount = deltaTime / seconds;
+        boolean moved = false;
+        for (Door door : doors) {
+            if (door.direction > 0) {
+                door.openness = Math.min(1, door.openness + amount);
+                moved = true;
+                if (door.openness == 1) {
+                    door.direction = 0;
+                    map.setTile(door.x, door.y, OPEN);
+                }
+            } else if (door.direction < 0) {
+                if (door.openness == 1) {
+                    if ((int)player.getX() == door.x && (int)player.getY() == door.y) {
+                        continue;
+                    }
+                    map.setTile(door.x, door.y, Map.DOOR);
+                }
+                door.openness = Math.max(0, door.openness - amount);
+                moved = true;
+                if (door.openness == 0) {
+                    door.direction = 0;
+                }
+            }
+        }
+        if (moved) {
+            publishOpenings();
+        }
+    }
+
+    private void publishOpenings() {
+        int count = 0;
+        for (Door door : doors) {
+            if (door.openness > 0) {
+                count++;
+            }
+        }
+        int[] indexes = new int[count];
+        double[] amounts = new double[count];
+        int i = 0;
+        for (Door door : doors) {
+            if (door.openness > 0) {
+                indexes[i] = map.index(door.x, door.y);
+                amounts[i++] = door.openness;
+            }
+        }
+        openings = new Openings(indexes, amounts, openings.version + 1);
+    }
+
+    private Door find(int x, int y) {
+        for (Door door : doors) {
+            if (door.x == x && door.y == y) {
+                return door;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.raycastinggame;
+
+/**
+ * Picks the Renderer's resolution step from measured frame times. The last
+ * windowFrames frames are kept in a ring with a running sum, and every
+ * frame the mean is compared with the budget: over it, the step drops to
+ * the largest resolution predicted to fit; well under it, the step rises
+ * by one. Cost is assumed to follow the pixel count. A step change empties
+ * the ring, and nothing is decided again until it has filled back up, so
+ * a step is only judged on its own frames.
+ */
+final class DynamicResolution {
+    static final double[] DEFAULT_SCALES = { 1.0, 0.85, 0.7, 0.6, 0.5, 0.4 };
+
+    // Only step up when the larger step is predicted to use at most this
+    // much of the budget, so the scaler doesn't bounce between two steps
+    private static final double RAISE_HEADROOM = 0.8;
+
+    private final double[] scales;
+    private final long budgetNanos;
+    private final long[] window;
+    // Next slot to write, frames in the ring and their total
+    private int head;
+    private int count;
+    private long sum;
+    private int step;
+
+    /**
+     * @param scales       the same scales given to Renderer.setResolutionScales,
+     *                     starting with 1.0
+     * @param budgetMillis target frame time
+     * @param windowFrames frames averaged in each decision
+     */
+    DynamicResolution(double[] scales, double budgetMillis, int windowFrames) {
+        if (scales.length == 0 || scales[0] != 1.0) {
+            throw new IllegalArgumentException("Scales must start at 1.0");
+        }
+        if (windowFrames < 1) {
+            throw new IllegalArgumentException("windowFrames must be at least 1: " + windowFrames);
+        }
+        this.scales = scales.clone();
+        this.budgetNanos = (long)(budgetMillis * 1_000_000);
+        this.window = new long[windowFrames];
+    }
+
+    /** Record one frame and return the step to render the next one at. */
+    int frameRendered(long frameNanos) {
+        if (count == window.length) {
+            sum -= window[head];
+        } else {
+            count++;
+        }
+        window[head] = frameNanos;
+        sum += frameNanos;
+        head = head + 1 == window.length ? 0 : head + 1;
+        if (count < window.length) {
+            return step;
+        }
+
+        double mean = (double)sum / count;
+        int chosen = step;
+        if (mean > budgetNanos) {
+            // Largest step that should fit, or the smallest there is
+            chosen = scales.length - 1;
+            for (int s = step + 1; s < scales.length; s++) {
+                if (predict(mean, s) <= budgetNanos) {
+                    chosen = s;
+                    break;
+                }
+            }
+        } else if (step > 0 && predict(mean, step - 1) <= budgetNanos * RAISE_HEADROOM) {
+            chosen = step - 1;
+        }
+
+        if (chosen != step) {
+            step = chosen;
+            clearWindow();
+        }
+        return step;
+    }
+
+    // Frame time expected at another step, scaled by its pixel count
+    private double predict(double mean, int at) {
+        double ratio = scales[at] / scales[step];
+        return mean * ratio * ratio;
+    }
+
+    /** Back to full resolution with an empty window. */
+    void reset() {
+        step = 0;
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        head = 0;
+        count = 0;
+        sum = 0;
+    }
+
+    int getStep() { return step; }
+    double getScale() { return scales[step]; }
+}
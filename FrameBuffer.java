@@ -0,0 +1,15 @@
+package com.example.raycastinggame;
+
+/** One rendered frame, handed from the render thread to the FX thread. */
+final class FrameBuffer {
+    // Sized for the output; a reduced resolution step uses the front of it
+    final int[] pixels;
+    int width;
+    int height;
+    int step;
+    boolean columnMajor;
+
+    FrameBuffer(int capacity) {
+        this.pixels = new int[capacity];
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.raycastinggame;
+
+/** The parts of a frame FrameStats times separately. */
+enum FrameStage {
+    INPUT, RAY_SETUP, DDA, RASTERIZE, FLOORS, LAYERS, SPRITES, PRESENT, FRAME
+}
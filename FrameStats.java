@@ -0,0 +1,126 @@
+package com.example.raycastinggame;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage frame timings and DDA step counts. Stages add nanoseconds to
+ * the current frame as they finish, and endFrame moves each total into
+ * that stage's histogram. Everything is atomics over preallocated arrays,
+ * so recording never locks or allocates and the overlay can read while
+ * the renderer writes.
+ *
+ * Workers cast and rasterize their strips in parallel, so in threaded
+ * frames DDA and RASTERIZE are CPU time summed over the workers and can
+ * add up to more than FRAME, which is wall-clock time. With a render
+ * thread, FRAME is that thread's time per frame, and INPUT and PRESENT from
+ * the FX thread count towards whichever frame is open.
+ */
+final class FrameStats {
+    private static final FrameStage[] STAGES = FrameStage.values();
+
+    private final AtomicLongArray frameNanos = new AtomicLongArray(STAGES.length);
+    private final AtomicLongArray lastNanos = new AtomicLongArray(STAGES.length);
+    private final Histogram[] histograms = new Histogram[STAGES.length];
+
+    // DDA loop iterations and rays cast this frame, then per-frame history
+    private final AtomicLong frameSteps = new AtomicLong();
+    private final AtomicLong frameRays = new AtomicLong();
+    private final Histogram stepsPerFrame = new Histogram();
+    private final AtomicLong totalSteps = new AtomicLong();
+    private final AtomicLong totalRays = new AtomicLong();
+    private volatile long lastSteps;
+    private volatile long lastRays;
+
+    FrameStats() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    void add(FrameStage stage, long nanos) {
+        frameNanos.getAndAdd(stage.ordinal(), nanos);
+    }
+
+    void addDda(long steps, int rays) {
+        frameSteps.getAndAdd(steps);
+        frameRays.getAndAdd(rays);
+    }
+
+    /**
+     * Close the current frame: record every stage that ran into its
+     * histogram and start the next frame from zero. Call once per frame,
+     * after the workers are done.
+     */
+    void endFrame() {
+        for (int i = 0; i < STAGES.length; i++) {
+            long nanos = frameNanos.getAndSet(i, 0);
+            lastNanos.set(i, nanos);
+            if (nanos > 0) {
+                histograms[i].record(nanos);
+            }
+        }
+
+        long steps = frameSteps.getAndSet(0);
+        long rays = frameRays.getAndSet(0);
+        lastSteps = steps;
+        lastRays = rays;
+        if (rays > 0) {
+            stepsPerFrame.record(steps);
+            totalSteps.getAndAdd(steps);
+            totalRays.getAndAdd(rays);
+        }
+    }
+
+    /** Drop all history, e.g. once the JIT has warmed up. */
+    void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        stepsPerFrame.reset();
+        totalSteps.set(0);
+        totalRays.set(0);
+    }
+
+    long getLastNanos(FrameStage stage) { return lastNanos.get(stage.ordinal()); }
+    Histogram getHistogram(FrameStage stage) { return histograms[stage.ordinal()]; }
+    long getLastSteps() { return lastSteps; }
+    long getLastRays() { return lastRays; }
+    Histogram getStepsPerFrame() { return stepsPerFrame; }
+
+    double getAverageStepsPerRay() {
+        long rays = totalRays.get();
+        return rays == 0 ? 0 : (double)totalSteps.get() / rays;
+    }
+
+    /**
+     * One row per stage with frame count, mean and percentiles in
+     * milliseconds, then DDA steps per frame and per ray.
+     */
+    void writeCsv(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("stage,frames,mean_ms,p50_ms,p90_ms,p99_ms,max_ms\n");
+            for (FrameStage stage : STAGES) {
+                Histogram h = histograms[stage.ordinal()];
+                out.write(String.format(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f%n",
+                        stage.name().toLowerCase(Locale.ROOT), h.getCount(), h.getMean() / 1e6,
+                        h.getPercentile(0.50) / 1e6, h.getPercentile(0.90) / 1e6,
+                        h.getPercentile(0.99) / 1e6, h.getMax() / 1e6));
+            }
+
+            out.write("\nmetric,frames,mean,p50,p90,p99,max\n");
+            Histogram h = stepsPerFrame;
+            out.write(String.format(Locale.ROOT, "dda_steps_per_frame,%d,%.1f,%d,%d,%d,%d%n",
+                    h.getCount(), h.getMean(), h.getPercentile(0.50), h.getPercentile(0.90),
+                    h.getPercentile(0.99), h.getMax()));
+            out.write(String.format(Locale.ROOT, "dda_steps_per_ray,%d,%.3f,,,,%n",
+                    h.getCount(), getAverageStepsPerRay()));
+        }
+    }
+}
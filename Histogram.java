@@ -0,0 +1,86 @@
+package com.example.raycastinggame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of non-negative longs: 16 buckets per
+ * power of two, so any recorded value is reported within about 6%. The
+ * bucket array is fixed at construction and covers up to 2^40.
+ */
+final class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = SUB_COUNT + (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        counts.getAndIncrement(bucket(value));
+        count.getAndIncrement();
+        sum.getAndAdd(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    // Values below 16 get a bucket each; above that, the exponent picks a
+    // group of 16 and the next four bits below the leading one pick the bucket
+    private static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int)Math.max(0, value);
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        if (exponent == MAX_EXPONENT && value >>> MAX_EXPONENT > 1) {
+            sub = SUB_COUNT - 1;
+        }
+        return SUB_COUNT + (exponent - SUB_BITS) * SUB_COUNT + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+        long sub = (bucket - SUB_COUNT) % SUB_COUNT;
+        return (SUB_COUNT + sub) << (exponent - SUB_BITS);
+    }
+
+    /** Lower bound of the bucket holding the given fraction of the values. */
+    long getPercentile(double fraction) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return lowerBound(i);
+            }
+        }
+        return max.get();
+    }
+
+    long getCount() { return count.get(); }
+    long getMax() { return max.get(); }
+
+    double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double)sum.get() / total;
+    }
+
+    // Not atomic as a whole: a value recorded during reset may be half kept
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.raycastinggame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static lighting baked per tile face, laid out beside the Map's padded
+ * grid: a level for each of the four faces of every cell, which walls,
+ * glass and grates show, and one for its floor, which every cell but a
+ * wall shows. Light passes glass and grates unblocked. Each level sums the
+ * ambient light and every point light that reaches the face centre
+ * unblocked, with a cosine term for walls and a quadratic falloff to the
+ * light's radius.
+ *
+ * Baking visits only the cells inside each light's radius and happens
+ * once, when the lightmap is made. After the map's tiles change, only the
+ * lights that reach an edited cell are baked again, in place, over the
+ * cells they reach. Rendering just reads levels for ShadeTable.
+ */
+final class Lightmap {
+    // Faces of a cell, named by the direction they face; y grows southwards
+    static final int WEST = 0;
+    static final int EAST = 1;
+    static final int NORTH = 2;
+    static final int SOUTH = 3;
+    static final int FLOOR = 4;
+    static final int FACES = 5;
+
+    // North and south faces get this much of their light, as y-sides are
+    // drawn darker without a lightmap too
+    private static final double Y_FACE_SHADE = 0.5;
+
+    // Light is accumulated in 1/255ths and read as ShadeTable levels
+    private static final int LEVEL_SHIFT = 8 - Integer.numberOfTrailingZeros(ShadeTable.LIGHT_LEVELS);
+
+    private final Map map;
+    private final List<PointLight> lights;
+    private final double ambient;
+    private final int stride;
+
+    // (padded index * FACES + face), unsigned light in 1/255ths
+    private final byte[] levels;
+    private final byte[] ambientLevels;
+    private MapSnapshot bakedTiles;
+
+    // Lights and padded cells being baked again, and the padded indexes
+    // edited; only used during refresh()
+    private final int[] staleLights;
+    private final boolean[] dirty;
+    private int[] edits = new int[16];
+
+    /** @param ambient light every face gets, from 0 to 1 */
+    Lightmap(Map map, List<PointLight> lights, double ambient) {
+        this.map = map;
+        this.lights = new ArrayList<>(lights);
+        this.ambient = ambient;
+        this.stride = map.getStride();
+        int cells = stride * (map.getHeight() + 2);
+        this.levels = new byte[cells * FACES];
+        this.dirty = new boolean[cells];
+        this.staleLights = new int[this.lights.size()];
+        this.ambientLevels = new byte[FACES];
+        for (int face = 0; face < FACES; face++) {
+            ambientLevels[face] = (byte)Math.round(clamp(ambient * faceShade(face)) * 255);
+        }
+
+        // Every cell dirty: a full bake
+        MapSnapshot tiles = map.snapshot();
+        Arrays.fill(dirty, true);
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = ambientLevels[i % FACES];
+        }
+        for (PointLight light : lights) {
+            bake(tiles, light);
+        }
+        Arrays.fill(dirty, false);
+        bakedTiles = tiles;
+    }
+
+    /**
+     * Bake again from tiles, a snapshot of this lightmap's map, if they
+     * changed since the last bake. Called by the Renderer at the start of a
+     * frame with the snapshot the frame draws, before any worker reads a
+     * level; false when nothing changed. Not thread-safe: renderers that
+     * share a lightmap need it refreshed for them first, as BatchRenderer
+     * does.
+     *
+     * Only lights that reach an edited cell are baked again. Their cells go
+     * back to ambient, and every light reaching any of those cells is added
+     * in again there. Levels only ever add up, so this lands on the same
+     * bytes a full bake would.
+     */
+    boolean refresh(MapSnapshot tiles) {
+        if (tiles.getVersion() == bakedTiles.getVersion()) {
+            return false;
+        }
+        int height = map.getHeight();
+
+        // Cells whose tile differs, found by comparing the changed chunks
+        int cells = stride * (height + 2);
+        int editCount = 0;
+        for (int chunk = 0; chunk < tiles.getChunkCount(); chunk++) {
+            if (!tiles.chunkChanged(bakedTiles, chunk)) {
+                continue;
+            }
+            int end = Math.min(cells, (chunk + 1) << MapSnapshot.CHUNK_SHIFT);
+            for (int i = chunk << MapSnapshot.CHUNK_SHIFT; i < end; i++) {
+                if (tiles.tileAt(i) != bakedTiles.tileAt(i)) {
+                    if (editCount == edits.length) {
+                        edits = Arrays.copyOf(edits, editCount * 2);
+                    }
+                    edits[editCount++] = i;
+                }
+            }
+        }
+
+        // Lights that read an edited cell: every tile inside their reach,
+        // and one past it where a face looks onto its neighbour
+        int staleCount = 0;
+        for (int l = 0; l < lights.size(); l++) {
+            PointLight light = lights.get(l);
+            for (int e = 0; e < editCount; e++) {
+                int editX = edits[e] % stride - 1;
+                int editY = edits[e] / stride - 1;
+                if (editX >= minX(light) - 1 && editX <= maxX(light) + 1
+                        && editY >= minY(light) - 1 && editY <= maxY(light) + 1) {
+                    staleLights[staleCount++] = l;
+                    break;
+                }
+            }
+        }
+
+        // Their cells go back to ambient, then every light reaching one of
+        // them is added in again there
+        for (int s = 0; s < staleCount; s++) {
+            markDirty(tiles, lights.get(staleLights[s]), true);
+        }
+        for (PointLight light : lights) {
+            if (reachesStale(light, staleCount)) {
+                bake(tiles, light);
+            }
+        }
+        for (int s = 0; s < staleCount; s++) {
+            markDirty(tiles, lights.get(staleLights[s]), false);
+        }
+        bakedTiles = tiles;
+        return editCount > 0;
+    }
+
+    Map getMap() { return map; }
+
+    /** Level of one face of the cell at a padded map index. */
+    int faceLevel(int mapIndex, int face) {
+        return (levels[mapIndex * FACES + face] & 0xFF) >> LEVEL_SHIFT;
+    }
+
+    /** Level of the floor under a world position; ambient outside the map. */
+    int floorLevel(double x, double y) {
+        return floorLevel((int)Math.floor(x), (int)Math.floor(y));
+    }
+
+    /** Level of the floor of cell (x, y); ambient outside the map. */
+    int floorLevel(int x, int y) {
+        if (x < 0 || x >= map.getWidth() || y < 0 || y >= map.getHeight()) {
+            return ambientLevel(FLOOR);
+        }
+        return faceLevel(map.index(x, y), FLOOR);
+    }
+
+    int ambientLevel(int face) {
+        return (int)Math.round(clamp(ambient * faceShade(face)) * 255) >> LEVEL_SHIFT;
+    }
+
+    /** The face a ray sees when it stops on the given side of a wall cell. */
+    static int face(int side, double rayDirX, double rayDirY) {
+        if (side == 0) {
+            return rayDirX > 0 ? WEST : EAST;
+        }
+        return rayDirY > 0 ? NORTH : SOUTH;
+    }
+
+    // Mark or unmark the cells a light reaches; marked cells start again
+    // from ambient
+    private void markDirty(MapSnapshot tiles, PointLight light, boolean mark) {
+        for (int y = minY(light); y <= maxY(light); y++) {
+            for (int x = minX(light); x <= maxX(light); x++) {
+                int index = tiles.index(x, y);
+                if (mark && !dirty[index]) {
+                    for (int face = 0; face < FACES; face++) {
+                        levels[index * FACES + face] = ambientLevels[face];
+                    }
+                }
+                dirty[index] = mark;
+            }
+        }
+    }
+
+    // Whether a light's reach overlaps one of the first count stale lights'
+    private boolean reachesStale(PointLight light, int count) {
+        for (int s = 0; s < count; s++) {
+            PointLight other = lights.get(staleLights[s]);
+            if (maxX(light) >= minX(other) && minX(light) <= maxX(other)
+                    && maxY(light) >= minY(other) && minY(light) <= maxY(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Every cell of the padded grid a light can reach, border walls included
+    private int minX(PointLight light) {
+        return Math.max(-1, (int)Math.floor(light.x - light.radius));
+    }
+
+    private int maxX(PointLight light) {
+        return Math.min(map.getWidth(), (int)Math.floor(light.x + light.radius));
+    }
+
+    private int minY(PointLight light) {
+        return Math.max(-1, (int)Math.floor(light.y - light.radius));
+    }
+
+    private int maxY(PointLight light) {
+        return Math.min(map.getHeight(), (int)Math.floor(light.y + light.radius));
+    }
+
+    // Add one light to the faces of the dirty cells it reaches
+    private void bake(MapSnapshot tiles, PointLight light) {
+        final byte[] baked = this.levels;
+        int width = map.getWidth();
+        int height = map.getHeight();
+        for (int y = minY(light); y <= maxY(light); y++) {
+            for (int x = minX(light); x <= maxX(light); x++) {
+                int index = tiles.index(x, y);
+                if (!dirty[index]) {
+                    continue;
+                }
+                // Glass and grates show both their floor, through them, and faces
+                int tile = tiles.tileAt(index);
+                if (tile != Map.WALL) {
+                    add(tiles, baked, index, FLOOR, light, x + 0.5, y + 0.5, 0, 0);
+                }
+                if (!Map.isSolidTile(tile)) {
+                    continue;
+                }
+                // Only faces onto a cell that isn't a wall can be seen
+                if (x > -1 && tiles.tileAt(index - 1) != Map.WALL) {
+                    add(tiles, baked, index, WEST, light, x, y + 0.5, -1, 0);
+                }
+                if (x < width && tiles.tileAt(index + 1) != Map.WALL) {
+                    add(tiles, baked, index, EAST, light, x + 1, y + 0.5, 1, 0);
+                }
+                if (y > -1 && tiles.tileAt(index - stride) != Map.WALL) {
+                    add(tiles, baked, index, NORTH, light, x + 0.5, y, 0, -1);
+                }
+                if (y < height && tiles.tileAt(index + stride) != Map.WALL) {
+                    add(tiles, baked, index, SOUTH, light, x + 0.5, y + 1, 0, 1);
+                }
+            }
+        }
+    }
+
+    // Add one light's contribution at point (px, py) of a face with normal
+    // (nx, ny); a zero normal is a floor, lit from every direction
+    private void add(MapSnapshot tiles, byte[] baked, int index, int face, PointLight light,
+                     double px, double py, double nx, double ny) {
+        double dx = light.x - px;
+        double dy = light.y - py;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance >= light.radius) {
+            return;
+        }
+
+        double cosine = 1;
+        if (nx != 0 || ny != 0) {
+            cosine = distance == 0 ? 1 : (dx * nx + dy * ny) / distance;
+            if (cosine <= 0) {
+                return;
+            }
+        }
+
+        // Trace to a point just off the face, so the wall itself doesn't block
+        if (!visible(tiles, light.x, light.y, px + nx * 1e-6, py + ny * 1e-6)) {
+            return;
+        }
+
+        double falloff = 1 - distance / light.radius;
+        double added = light.intensity * cosine * falloff * falloff * faceShade(face);
+        int slot = index * FACES + face;
+        int level = (baked[slot] & 0xFF) + (int)Math.round(clamp(added) * 255);
+        baked[slot] = (byte)Math.min(255, level);
+    }
+
+    // Whether the segment between two points crosses no wall cell, not
+    // counting the cell it starts in: a grid walk like the renderer's DDA
+    private boolean visible(MapSnapshot tiles, double x0, double y0, double x1, double y1) {
+        int mapX = (int)Math.floor(x0);
+        int mapY = (int)Math.floor(y0);
+        int endX = (int)Math.floor(x1);
+        int endY = (int)Math.floor(y1);
+        double dirX = x1 - x0;
+        double dirY = y1 - y0;
+        double deltaX = Math.abs(1 / dirX);
+        double deltaY = Math.abs(1 / dirY);
+        int stepX = dirX < 0 ? -1 : 1;
+        int stepY = dirY < 0 ? -1 : 1;
+        double sideX = (dirX < 0 ? x0 - mapX : mapX + 1 - x0) * deltaX;
+        double sideY = (dirY < 0 ? y0 - mapY : mapY + 1 - y0) * deltaY;
+
+        while (mapX != endX || mapY != endY) {
+            // Past the end of the segment without reaching its cell: done
+            if (Math.min(sideX, sideY) > 1) {
+                return true;
+            }
+            if (sideX < sideY) {
+                sideX += deltaX;
+                mapX += stepX;
+            } else {
+                sideY += deltaY;
+                mapY += stepY;
+            }
+            if (mapX < -1 || mapX > map.getWidth() || mapY < -1 || mapY > map.getHeight()) {
+                return false;
+            }
+            // A door casts shadow like a wall until it has opened all the way
+            int tile = tiles.tileAt(tiles.index(mapX, mapY));
+            if (tile == Map.WALL || tile == Map.DOOR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double faceShade(int face) {
+        return face == NORTH || face == SOUTH ? Y_FACE_SHADE : 1;
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
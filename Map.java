@@ -0,0 +1,174 @@
+package com.example.raycastinggame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+class Map {
+    // Simple map layout - 1 represents a wall, 0 is empty space
+    private static final int[][] DEFAULT_LAYOUT = {
+            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1}
+    };
+
+    // Tile value of walls, and of the solid ring padded around every map
+    static final int WALL = 1;
+
+    // See-through tiles: rays carry on past them, and they are drawn over
+    // whatever lies behind. GLASS tints it; GRATE is bars with gaps between.
+    // Nothing walks through either, but light and sight go through both.
+    static final int GLASS = 2;
+    static final int GRATE = 3;
+
+    // A door that is shut or moving; Doors owns it. Rays meet it as a slab
+    // across the middle of the cell, slid aside as far as it has opened.
+    static final int DOOR = 4;
+
+    // Row-major tiles with a one-cell WALL border, so a ray that starts
+    // inside the map always stops before it can index outside the grid.
+    // Every edit publishes a new snapshot; readers that need several tiles
+    // to agree, like a render frame, take one snapshot and keep to it.
+    private volatile MapSnapshot snapshot;
+    private final int width;
+    private final int height;
+    private final int stride;
+
+    public Map() {
+        this(DEFAULT_LAYOUT);
+    }
+
+    // Rows of tile values 0-255, indexed [y][x]; every row must be the same length
+    public Map(int[][] mapData) {
+        this.height = mapData.length;
+        this.width = height == 0 ? 0 : mapData[0].length;
+        this.stride = width + 2;
+        byte[] tiles = new byte[stride * (height + 2)];
+        Arrays.fill(tiles, (byte)WALL);
+
+        for (int y = 0; y < height; y++) {
+            if (mapData[y].length != width) {
+                throw new IllegalArgumentException("Row " + y + " has " + mapData[y].length
+                        + " tiles, expected " + width);
+            }
+            for (int x = 0; x < width; x++) {
+                int value = mapData[y][x];
+                if (value < 0 || value > 255) {
+                    throw new IllegalArgumentException("Tile (" + x + ", " + y + ") out of range: " + value);
+                }
+                tiles[index(x, y)] = (byte)value;
+            }
+        }
+        this.snapshot = new MapSnapshot(tiles, width, height);
+    }
+
+    // Padded tiles laid out exactly like the heap grid, read in place from
+    // a mapped file. Absolute gets never touch the buffer position, so any
+    // number of render workers can read it at once. occupancy is the
+    // pyramid the file stores, or null when it has none.
+    Map(ByteBuffer tileBuffer, int width, int height, MapOccupancy occupancy) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 2;
+
+        if (tileBuffer.capacity() != stride * (height + 2)) {
+            throw new IllegalArgumentException("Expected " + stride * (height + 2)
+                    + " tile bytes for " + width + "x" + height + ", got " + tileBuffer.capacity());
+        }
+        this.snapshot = new MapSnapshot(tileBuffer, width, height, occupancy);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isWall(int x, int y) {
+        // Check bounds
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return true; // Treat out of bounds as walls
+        }
+
+        return snapshot.tileAt(index(x, y)) == WALL;
+    }
+
+    /** Whether cell (x, y) can't be walked into: a wall or a see-through tile. */
+    public boolean isSolid(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return true;
+        }
+        return isSolidTile(snapshot.tileAt(index(x, y)));
+    }
+
+    /** Whether a ray has to look at a tile: a wall, a door, or one it sees through. */
+    static boolean isSolidTile(int tile) {
+        return tile == WALL || tile == DOOR || isSeeThrough(tile);
+    }
+
+    static boolean isSeeThrough(int tile) {
+        return tile == GLASS || tile == GRATE;
+    }
+
+    public int getMapValue(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return 0;
+        }
+        return snapshot.tileAt(index(x, y)) & 0xFF;
+    }
+
+    /**
+     * Change one tile of a heap map. The edit is published as a new
+     * snapshot: frames already drawing keep the one they took, and the
+     * version moves on, so cached frames get redrawn. Written by one thread
+     * at a time, the one running the simulation.
+     */
+    public void setTile(int x, int y, int value) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException("Tile (" + x + ", " + y + ") is outside the map");
+        }
+        if (value < 0 || value > 255) {
+            throw new IllegalArgumentException("Tile (" + x + ", " + y + ") out of range: " + value);
+        }
+        MapSnapshot current = snapshot;
+        if (current.isReadOnly()) {
+            throw new UnsupportedOperationException("Maps opened from a file are read-only");
+        }
+
+        int index = index(x, y);
+        if (current.tileAt(index) != (byte)value) {
+            snapshot = current.withTile(index, (byte)value);
+        }
+    }
+
+    /** The tiles as they are now, unchanged by later edits. */
+    public MapSnapshot snapshot() { return snapshot; }
+
+    public long getVersion() { return snapshot.getVersion(); }
+
+    // Bulk access: index(x, y) is valid for -1 <= x <= width and
+    // -1 <= y <= height, and moving one row is +/- getStride(). Reads the
+    // latest snapshot; take one with snapshot() to read several consistently.
+    public byte tileAt(int index) {
+        return snapshot.tileAt(index);
+    }
+
+    // Where the walls are in the latest snapshot, at 8x8 and 64x64 block granularity
+    public MapOccupancy getOccupancy() {
+        return snapshot.getOccupancy();
+    }
+
+    public int getStride() { return stride; }
+
+    public int index(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+}
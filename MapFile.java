@@ -0,0 +1,184 @@
+package com.example.raycastinggame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Binary tile map files that open with FileChannel.map, for worlds far too
+ * big for an array literal.
+ *
+ * Layout (big-endian):
+ *   int    magic     'RCMP'
+ *   int    version   2
+ *   int    width
+ *   int    height
+ *   byte[] tiles     (width + 2) * (height + 2), row-major, WALL border included
+ *   byte[] padding   zeros up to the next multiple of 8 from the file start
+ *   long[] occupancy the MapOccupancy bits of the padded grid, fine then coarse
+ *
+ * The tile block is the same padded grid Map keeps on the heap, so it is
+ * used in place and the interior is never scanned at open time. Only the
+ * border ring is read, 2 * (width + height) + 4 bytes, because the DDA
+ * counts on it to stop every ray: a file with a gap in it is rejected
+ * rather than left to walk a ray off the edge of the mapping.
+ *
+ * The occupancy block is mapped too, so empty-space skipping doesn't scan
+ * the map on the first frame either. Version 1 files end after the tiles;
+ * they still open, and build the pyramid from every cell on first use.
+ */
+final class MapFile {
+    static final int MAGIC = 0x52434D50;
+    static final int VERSION = 2;
+    // Version 1 files have no occupancy block
+    private static final int TILES_ONLY_VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    private MapFile() {
+    }
+
+    static Map open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException(file + " is too short for a map header");
+                }
+            }
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a map file");
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != TILES_ONLY_VERSION) {
+                throw new IOException(file + " has unsupported map version " + version);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            if (width < 1 || height < 1) {
+                throw new IOException(file + " has invalid size " + width + "x" + height);
+            }
+
+            long tileBytes = (long)(width + 2) * (height + 2);
+            if (tileBytes > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map: " + width + "x" + height);
+            }
+            long occupancyStart = occupancyStart(tileBytes);
+            long occupancyBytes = MapOccupancy.byteSize(width + 2, height + 2);
+            long end = version == VERSION ? occupancyStart + occupancyBytes : HEADER_BYTES + tileBytes;
+            if (channel.size() < end) {
+                throw new IOException(file + " is truncated");
+            }
+
+            // The mappings stay valid after the channel is closed
+            MappedByteBuffer tiles = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, tileBytes);
+            checkBorder(file, tiles, width, height);
+            MapOccupancy occupancy = null;
+            if (version == VERSION) {
+                occupancy = new MapOccupancy(
+                        channel.map(FileChannel.MapMode.READ_ONLY, occupancyStart, occupancyBytes),
+                        width + 2, height + 2);
+            }
+            return new Map(tiles, width, height, occupancy);
+        }
+    }
+
+    // Where the occupancy block begins after tileBytes of tiles: 8-aligned,
+    // so its longs never straddle a word
+    private static long occupancyStart(long tileBytes) {
+        return (HEADER_BYTES + tileBytes + 7) & ~7L;
+    }
+
+    // Every cell of the padded ring has to be WALL; glass or grate would
+    // let a ray through just as an open cell would.
+    private static void checkBorder(Path file, ByteBuffer tiles, int width, int height) throws IOException {
+        int stride = width + 2;
+        int last = (height + 1) * stride;
+        for (int x = 0; x < stride; x++) {
+            if (tiles.get(x) != Map.WALL || tiles.get(last + x) != Map.WALL) {
+                throw new IOException(file + " has a gap in its border at column " + (x - 1));
+            }
+        }
+        for (int row = stride; row < last; row += stride) {
+            if (tiles.get(row) != Map.WALL || tiles.get(row + stride - 1) != Map.WALL) {
+                throw new IOException(file + " has a gap in its border at row " + (row / stride - 1));
+            }
+        }
+    }
+
+    static void write(Map map, Path file) throws IOException {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        MapSnapshot tiles = map.snapshot();
+        try (DataOutputStream out = openForWrite(file, width, height)) {
+            MapOccupancy occupancy = new MapOccupancy(width + 2, height + 2);
+            byte[] row = new byte[width + 2];
+            for (int y = -1; y <= height; y++) {
+                for (int x = -1; x <= width; x++) {
+                    row[x + 1] = tiles.tileAt(tiles.index(x, y));
+                    if (Map.isSolidTile(row[x + 1])) {
+                        occupancy.markSolid(x + 1, y + 1);
+                    }
+                }
+                out.write(row);
+            }
+            writeOccupancy(out, width, height, occupancy);
+        }
+    }
+
+    /**
+     * Stream a stress world to disk one row at a time: a solid border and
+     * randomly placed walls covering fill of the interior, with the centre
+     * cell left open for the camera.
+     */
+    static void generate(Path file, int width, int height, double fill, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (DataOutputStream out = openForWrite(file, width, height)) {
+            // Filled in as the rows go out, so the tiles are never held whole
+            MapOccupancy occupancy = new MapOccupancy(width + 2, height + 2);
+            byte[] row = new byte[width + 2];
+            for (int y = -1; y <= height; y++) {
+                for (int x = -1; x <= width; x++) {
+                    boolean border = x < 0 || y < 0 || x == width || y == height;
+                    boolean centre = x == width / 2 && y == height / 2;
+                    boolean wall = border || (!centre && random.nextDouble() < fill);
+                    row[x + 1] = (byte)(wall ? Map.WALL : 0);
+                    if (wall) {
+                        occupancy.markSolid(x + 1, y + 1);
+                    }
+                }
+                out.write(row);
+            }
+            writeOccupancy(out, width, height, occupancy);
+        }
+    }
+
+    private static void writeOccupancy(DataOutputStream out, int width, int height, MapOccupancy occupancy)
+            throws IOException {
+        long tileBytes = (long)(width + 2) * (height + 2);
+        for (long at = HEADER_BYTES + tileBytes; at < occupancyStart(tileBytes); at++) {
+            out.writeByte(0);
+        }
+        occupancy.write(out);
+    }
+
+    private static DataOutputStream openForWrite(Path file, int width, int height) throws IOException {
+        if ((long)(width + 2) * (height + 2) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Map too large for one mapping: " + width + "x" + height);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        return out;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.raycastinggame;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Coarse occupancy pyramid over a Map's padded grid: one bit per 8x8 block
+ * and one per 64x64 block, set when the block holds at least one wall or
+ * see-through tile.
+ * Rays use it to cross empty blocks in a single jump. Like the snapshot
+ * it belongs to, it never changes once built; an edit makes a copy that
+ * shares every page of bits the edit leaves alone.
+ *
+ * Map files store the bits after their tiles, fine words then coarse, in
+ * the order the pages hold them, so a mapped map reads its pyramid in place
+ * instead of scanning every cell on the first frame.
+ */
+class MapOccupancy {
+    static final int FINE_SHIFT = 3;
+    static final int COARSE_SHIFT = 6;
+    // Bits are kept in pages of 64 words, 4096 blocks each
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    // Exactly one of the page arrays (built on the heap) and the buffers
+    // (mapped from a file) is set, as for MapSnapshot's tiles
+    private final long[][] fine;
+    private final long[][] coarse;
+    private final LongBuffer fineBuffer;
+    private final LongBuffer coarseBuffer;
+    private final int fineColumns;
+    private final int fineRows;
+    private final int coarseColumns;
+
+    MapOccupancy(MapSnapshot tiles) {
+        this(tiles.getStride(), tiles.getHeight() + 2);
+        int columns = tiles.getStride();
+        int rows = tiles.getHeight() + 2;
+        for (int py = 0; py < rows; py++) {
+            int rowStart = py * columns;
+            for (int px = 0; px < columns; px++) {
+                if (Map.isSolidTile(tiles.tileAt(rowStart + px))) {
+                    markSolid(px, py);
+                }
+            }
+        }
+    }
+
+    /**
+     * An empty pyramid for a padded grid of columns x rows, for a writer to
+     * fill with markSolid as it goes. Nothing may read it until it is full.
+     */
+    MapOccupancy(int columns, int rows) {
+        fineColumns = blocks(columns, FINE_SHIFT);
+        coarseColumns = blocks(columns, COARSE_SHIFT);
+        fineRows = blocks(rows, FINE_SHIFT);
+        fine = newBits((long)fineColumns * fineRows);
+        coarse = newBits((long)coarseColumns * blocks(rows, COARSE_SHIFT));
+        fineBuffer = null;
+        coarseBuffer = null;
+    }
+
+    /**
+     * The pyramid stored in bits, as write() lays it out, for a padded grid
+     * of columns x rows. Read in place and never copied.
+     */
+    MapOccupancy(ByteBuffer bits, int columns, int rows) {
+        fineColumns = blocks(columns, FINE_SHIFT);
+        coarseColumns = blocks(columns, COARSE_SHIFT);
+        fineRows = blocks(rows, FINE_SHIFT);
+        int fineWords = words((long)fineColumns * fineRows);
+        int coarseWords = words((long)coarseColumns * blocks(rows, COARSE_SHIFT));
+        if (bits.capacity() != 8L * (fineWords + coarseWords)) {
+            throw new IllegalArgumentException("Expected " + 8L * (fineWords + coarseWords)
+                    + " occupancy bytes for " + columns + "x" + rows + ", got " + bits.capacity());
+        }
+        LongBuffer longs = bits.asLongBuffer();
+        fineBuffer = longs.duplicate().limit(fineWords);
+        coarseBuffer = longs.duplicate().position(fineWords).slice();
+        fine = null;
+        coarse = null;
+    }
+
+    private MapOccupancy(MapOccupancy other, long[][] fine, long[][] coarse) {
+        this.fine = fine;
+        this.coarse = coarse;
+        fineBuffer = null;
+        coarseBuffer = null;
+        fineColumns = other.fineColumns;
+        fineRows = other.fineRows;
+        coarseColumns = other.coarseColumns;
+    }
+
+    /** Bytes write() puts out for a padded grid of columns x rows. */
+    static long byteSize(int columns, int rows) {
+        return 8L * (words((long)blocks(columns, FINE_SHIFT) * blocks(rows, FINE_SHIFT))
+                + words((long)blocks(columns, COARSE_SHIFT) * blocks(rows, COARSE_SHIFT)));
+    }
+
+    /** Record a wall or see-through tile at padded cell (px, py) while building. */
+    void markSolid(int px, int py) {
+        set(fine, (py >> FINE_SHIFT) * fineColumns + (px >> FINE_SHIFT));
+        set(coarse, (py >> COARSE_SHIFT) * coarseColumns + (px >> COARSE_SHIFT));
+    }
+
+    /** Write a pyramid built on the heap as a map file stores it: fine words, then coarse. */
+    void write(DataOutput out) throws IOException {
+        for (long[][] bits : new long[][][] { fine, coarse }) {
+            for (long[] page : bits) {
+                for (long word : page) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * The pyramid for tiles, which differ from the ones this was built for
+     * only at padded cell (px, py): that cell's 8x8 block rescanned and its
+     * 64x64 block rebuilt from the 8x8 bits. Shares this one's bits, copying
+     * only a page that has to change; this itself when none does.
+     */
+    MapOccupancy withCell(MapSnapshot tiles, int px, int py) {
+        int columns = tiles.getStride();
+        int rows = tiles.getHeight() + 2;
+
+        int fineX = px >> FINE_SHIFT;
+        int fineY = py >> FINE_SHIFT;
+        boolean wall = false;
+        for (int y = fineY << FINE_SHIFT; y < Math.min(rows, (fineY + 1) << FINE_SHIFT) && !wall; y++) {
+            for (int x = fineX << FINE_SHIFT; x < Math.min(columns, (fineX + 1) << FINE_SHIFT); x++) {
+                if (Map.isSolidTile(tiles.tileAt(y * columns + x))) {
+                    wall = true;
+                    break;
+                }
+            }
+        }
+        long[][] nextFine = assign(fine, fineY * fineColumns + fineX, wall);
+
+        int coarseX = px >> COARSE_SHIFT;
+        int coarseY = py >> COARSE_SHIFT;
+        int blocks = 1 << (COARSE_SHIFT - FINE_SHIFT);
+        boolean anyWall = false;
+        for (int y = coarseY * blocks; y < Math.min(fineRows, (coarseY + 1) * blocks); y++) {
+            for (int x = coarseX * blocks; x < Math.min(fineColumns, (coarseX + 1) * blocks); x++) {
+                anyWall |= get(nextFine, y * fineColumns + x);
+            }
+        }
+        long[][] nextCoarse = assign(coarse, coarseY * coarseColumns + coarseX, anyWall);
+        if (nextFine == fine && nextCoarse == coarse) {
+            return this;
+        }
+        return new MapOccupancy(this, nextFine, nextCoarse);
+    }
+
+    /**
+     * Log2 of the size of the largest empty block containing padded cell
+     * (px, py), or 0 when its 8x8 block holds a wall or see-through tile.
+     */
+    int emptyBlockShift(int px, int py) {
+        int fineBit = (py >> FINE_SHIFT) * fineColumns + (px >> FINE_SHIFT);
+        if (fine != null ? get(fine, fineBit) : get(fineBuffer, fineBit)) {
+            return 0;
+        }
+        int coarseBit = (py >> COARSE_SHIFT) * coarseColumns + (px >> COARSE_SHIFT);
+        if (coarse != null ? get(coarse, coarseBit) : get(coarseBuffer, coarseBit)) {
+            return FINE_SHIFT;
+        }
+        return COARSE_SHIFT;
+    }
+
+    private static int blocks(int cells, int shift) {
+        return (cells + (1 << shift) - 1) >> shift;
+    }
+
+    private static int words(long bits) {
+        return (int)((bits + 63) >> 6);
+    }
+
+    private static long[][] newBits(long count) {
+        long[][] bits = new long[(int)((count + PAGE_MASK) >> PAGE_SHIFT)][];
+        for (int page = 0; page < bits.length; page++) {
+            long pageBits = Math.min(1L << PAGE_SHIFT, count - ((long)page << PAGE_SHIFT));
+            bits[page] = new long[(int)((pageBits + 63) >> 6)];
+        }
+        return bits;
+    }
+
+    private static void set(long[][] bits, int bit) {
+        bits[bit >>> PAGE_SHIFT][(bit & PAGE_MASK) >>> 6] |= 1L << bit;
+    }
+
+    // bits with one bit given a value: the same pages when it already has
+    // it, else copies of the page table and the page holding the bit
+    private static long[][] assign(long[][] bits, int bit, boolean value) {
+        if (get(bits, bit) == value) {
+            return bits;
+        }
+        long[][] edited = bits.clone();
+        long[] page = edited[bit >>> PAGE_SHIFT].clone();
+        page[(bit & PAGE_MASK) >>> 6] ^= 1L << bit;
+        edited[bit >>> PAGE_SHIFT] = page;
+        return edited;
+    }
+
+    private static boolean get(long[][] bits, int bit) {
+        return (bits[bit >>> PAGE_SHIFT][(bit & PAGE_MASK) >>> 6] & (1L << bit)) != 0;
+    }
+
+    // Pages are 64 whole words, so word bit >>> 6 of the flat buffer is the
+    // one the page arrays would hold it in
+    private static boolean get(LongBuffer bits, int bit) {
+        return (bits.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+}
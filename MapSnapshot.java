@@ -0,0 +1,161 @@
+package com.example.raycastinggame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One version of a Map's tiles, never changed once published. The padded
+ * grid is cut into chunks of CHUNK_CELLS consecutive padded indexes, and
+ * the chunks into pages of PAGE_CHUNKS. An edit copies only the chunk it
+ * touches, the page holding it and the short table of pages, shares
+ * everything else with the snapshot before it, and the Map publishes the
+ * result with one volatile write.
+ *
+ * A frame takes one snapshot and reads only that, so every render worker
+ * sees the same tiles however the simulation edits the map meanwhile, and
+ * nobody takes a lock. Maps opened from a file are read-only and keep a
+ * single snapshot over the mapped buffer.
+ */
+final class MapSnapshot {
+    // 4096 cells: a few rows of a large map, the whole of a small one
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_CELLS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_CELLS - 1;
+    // 64 chunks a page, so a 4096x4096 map has 64 pages
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_CHUNKS = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_CHUNKS - 1;
+
+    // Exactly one of pages (heap maps) and tileBuffer (mapped files) is set.
+    // Chunk c is pages[c >>> PAGE_SHIFT][c & PAGE_MASK]; the last page may be short.
+    private final byte[][][] pages;
+    private final int chunkCount;
+    private final ByteBuffer tileBuffer;
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final long version;
+
+    // Built on first use, or carried over from the previous snapshot with
+    // just the edited cell's blocks redone
+    private volatile MapOccupancy occupancy;
+
+    // The first snapshot of a heap map, cut from its padded tiles
+    MapSnapshot(byte[] tiles, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 2;
+        this.tileBuffer = null;
+        this.version = 0;
+        this.chunkCount = (tiles.length + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.pages = new byte[(chunkCount + PAGE_MASK) >> PAGE_SHIFT][][];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = new byte[Math.min(PAGE_CHUNKS, chunkCount - (page << PAGE_SHIFT))][];
+        }
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int from = chunk << CHUNK_SHIFT;
+            byte[] cells = new byte[CHUNK_CELLS];
+            System.arraycopy(tiles, from, cells, 0, Math.min(CHUNK_CELLS, tiles.length - from));
+            pages[chunk >>> PAGE_SHIFT][chunk & PAGE_MASK] = cells;
+        }
+    }
+
+    // The only snapshot of a map read in place from a mapped file, with the
+    // pyramid the file stores, or null to build it on first use
+    MapSnapshot(ByteBuffer tileBuffer, int width, int height, MapOccupancy occupancy) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 2;
+        this.tileBuffer = tileBuffer;
+        this.pages = null;
+        this.chunkCount = (stride * (height + 2) + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.version = 0;
+        this.occupancy = occupancy;
+    }
+
+    private MapSnapshot(MapSnapshot previous, byte[][][] pages, MapOccupancy occupancy) {
+        this.width = previous.width;
+        this.height = previous.height;
+        this.stride = previous.stride;
+        this.tileBuffer = null;
+        this.version = previous.version + 1;
+        this.pages = pages;
+        this.chunkCount = previous.chunkCount;
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * The next version: this one with a single cell changed. Copies the
+     * chunk the cell lies in, its page and the table of pages, and nothing
+     * else.
+     */
+    MapSnapshot withTile(int index, byte value) {
+        if (pages == null) {
+            throw new UnsupportedOperationException("Maps opened from a file are read-only");
+        }
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        byte[][][] edited = pages.clone();
+        byte[][] page = edited[chunkIndex >>> PAGE_SHIFT].clone();
+        byte[] chunk = page[chunkIndex & PAGE_MASK].clone();
+        chunk[index & CHUNK_MASK] = value;
+        page[chunkIndex & PAGE_MASK] = chunk;
+        edited[chunkIndex >>> PAGE_SHIFT] = page;
+
+        MapSnapshot next = new MapSnapshot(this, edited, null);
+        MapOccupancy built = occupancy;
+        if (built != null) {
+            next.occupancy = built.withCell(next, index % stride, index / stride);
+        }
+        return next;
+    }
+
+    public byte tileAt(int index) {
+        return pages != null
+                ? pages[index >>> (CHUNK_SHIFT + PAGE_SHIFT)][(index >>> CHUNK_SHIFT) & PAGE_MASK][index & CHUNK_MASK]
+                : tileBuffer.get(index);
+    }
+
+    public long getVersion() { return version; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getStride() { return stride; }
+    boolean isReadOnly() { return pages == null; }
+
+    public int index(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+
+    // Where the walls are at 8x8 and 64x64 block granularity. Built on
+    // first use unless the map file stored it, which only files from before
+    // MapFile version 2 don't; building it is one pass over every cell.
+    public MapOccupancy getOccupancy() {
+        MapOccupancy result = occupancy;
+        if (result == null) {
+            synchronized (this) {
+                if (occupancy == null) {
+                    occupancy = new MapOccupancy(this);
+                }
+                result = occupancy;
+            }
+        }
+        return result;
+    }
+
+    int getChunkCount() { return chunkCount; }
+
+    /**
+     * Whether a chunk may hold different tiles than it did in an earlier
+     * snapshot, of this map or any other; always true when earlier is null.
+     * Lets a copy of the tiles be brought up to date chunk by chunk.
+     */
+    boolean chunkChanged(MapSnapshot earlier, int chunk) {
+        if (earlier == null || pages == null || earlier.pages == null) {
+            return earlier != this;
+        }
+        if (chunk >= earlier.chunkCount) {
+            return true;
+        }
+        byte[][] page = pages[chunk >>> PAGE_SHIFT];
+        byte[][] earlierPage = earlier.pages[chunk >>> PAGE_SHIFT];
+        return page != earlierPage && page[chunk & PAGE_MASK] != earlierPage[chunk & PAGE_MASK];
+    }
+}
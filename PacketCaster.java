@@ -0,0 +1,58 @@
+package com.example.raycastinggame;
+
+/**
+ * A DDA engine that traces several columns' rays at once. It walks the
+ * padded grid cell by cell exactly as Renderer.castColumns does, so the
+ * Renderer finishes its hits into the very same per-column results.
+ */
+interface PacketCaster {
+    /**
+     * hitSides value for a column whose ray reached a see-through tile or a
+     * door. The engine stops there, and the Renderer traces that column itself.
+     */
+    int HANDED_OFF = -2;
+
+    /**
+     * Get ready to trace rays through tiles, the map snapshot the coming
+     * frame draws; false when this engine can't, and the Renderer uses its
+     * scalar loop instead. Called on the rendering thread before any trace().
+     */
+    boolean prepare(MapSnapshot tiles);
+
+    /**
+     * Trace columns [from, to) from (posX, posY), in padded cell startIndex,
+     * using the Renderer's per-frame ray tables; to is at most the column
+     * count the engine was made for. For each column, write the padded index
+     * of the wall cell hit to hitIndexes and the side hit (0 for x, 1 for y)
+     * to hitSides, Renderer.NO_HIT when nothing lies within maxViewDistance,
+     * or HANDED_OFF when the ray entered a see-through tile or a door first.
+     * Safe to call from several workers at once on disjoint ranges that
+     * start on a multiple of packetWidth(), as the Renderer's strips do.
+     *
+     * @return DDA steps taken over all the rays
+     */
+    long trace(double posX, double posY, int startIndex,
+               double[] rayDirXs, double[] rayDirYs, double[] deltaDistXs, double[] deltaDistYs,
+               double maxViewDistance, int from, int to, int[] hitIndexes, int[] hitSides);
+
+    /** Columns traced together; a packet may use scratch up to its last one. */
+    int packetWidth();
+
+    /**
+     * The Vector API engine for screens up to columns wide, or null when
+     * jdk.incubator.vector is not in the boot layer (run with --add-modules
+     * jdk.incubator.vector). Loaded by name, so nothing else links against
+     * the incubator module.
+     */
+    static PacketCaster loadVector(int columns) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (PacketCaster)Class.forName("com.example.raycastinggame.VectorDda")
+                    .getDeclaredConstructor(int.class).newInstance(columns);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.raycastinggame;
+
+class Player {
+    // Position
+    private double x;
+    private double y;
+
+    // Direction vector
+    private double dirX;
+    private double dirY;
+
+    // Camera plane - perpendicular to direction
+    private double planeX;
+    private double planeY;
+
+    // Facing angle in radians; dir and plane are derived from it so turning
+    // costs one sin and one cos and never drifts off unit length
+    private double angle;
+    private final double dirLength;
+    private final double planeLength;
+
+    // State at the start of the current simulation step, for interpolation
+    private double previousX;
+    private double previousY;
+    private double previousAngle;
+
+    // Bumped whenever position or angle changes, so the renderer can tell
+    // an unchanged camera without comparing doubles
+    private long version;
+    private long previousVersion;
+
+    // Movement properties
+    private double moveSpeed = 3.0; // units per second
+    private double rotSpeed = 2.0; // radians per second
+
+    public Player(double x, double y, double dirX, double dirY) {
+        this.x = x;
+        this.y = y;
+
+        // Initialize the camera plane perpendicular to direction vector
+        // This determines FOV - the ratio between planeLength and dirLength
+        this.dirLength = Math.hypot(dirX, dirY);
+        this.planeLength = 0.90; // FOV of approximately 66 degrees
+        setAngle(Math.atan2(dirY, dirX));
+        savePreviousState();
+    }
+
+    /** Remember the current state as the start of the next simulation step. */
+    public void savePreviousState() {
+        previousX = x;
+        previousY = y;
+        previousAngle = angle;
+        previousVersion = version;
+    }
+
+    /**
+     * The camera at fraction alpha of the way from the previous simulation
+     * step to the current one. Alpha 1, or a step that changed nothing,
+     * gives exactly the current state, tagged with the current version.
+     */
+    public CameraPose snapshot(double alpha) {
+        if (alpha >= 1 || version == previousVersion) {
+            return new CameraPose(x, y, dirX, dirY, planeX, planeY, version);
+        }
+
+        // Turn the short way round when the angle wraps past +-pi
+        double turn = Math.IEEEremainder(angle - previousAngle, 2 * Math.PI);
+        double cos = Math.cos(previousAngle + turn * alpha);
+        double sin = Math.sin(previousAngle + turn * alpha);
+        return new CameraPose(previousX + (x - previousX) * alpha, previousY + (y - previousY) * alpha,
+                cos * dirLength, sin * dirLength, -sin * planeLength, cos * planeLength, CameraPose.IN_BETWEEN);
+    }
+
+    public void move(double dx, double dy, Map map) {
+        double oldX = x;
+        double oldY = y;
+
+        // Check for collision before moving
+        if (!map.isSolid((int)(x + dx), (int)y)) {
+            x += dx;
+        }
+
+        if (!map.isSolid((int)x, (int)(y + dy))) {
+            y += dy;
+        }
+
+        if (x != oldX || y != oldY) {
+            version++;
+        }
+    }
+
+    public void rotate(double angle) {
+        setAngle(this.angle + angle);
+    }
+
+    public void setAngle(double angle) {
+        // Keep the angle in [-pi, pi] so it never loses precision
+        this.angle = Math.IEEEremainder(angle, 2 * Math.PI);
+
+        // Direction vector and camera plane (dir turned a quarter left) from one sin/cos pair
+        double cos = Math.cos(this.angle);
+        double sin = Math.sin(this.angle);
+        dirX = cos * dirLength;
+        dirY = sin * dirLength;
+        planeX = -sin * planeLength;
+        planeY = cos * planeLength;
+        version++;
+    }
+
+    // Movement methods
+    public void moveForward(double deltaTime, Map map) {
+        double dx = dirX * moveSpeed * deltaTime;
+        double dy = dirY * moveSpeed * deltaTime;
+        move(dx, dy, map);
+    }
+
+    public void moveBackward(double deltaTime, Map map) {
+        double dx = -dirX * moveSpeed * deltaTime;
+        double dy = -dirY * moveSpeed * deltaTime;
+        move(dx, dy, map);
+    }
+
+    public void strafeLeft(double deltaTime, Map map) {
+        // Move perpendicular to direction vector
+        double dx = -dirY * moveSpeed * deltaTime;
+        double dy = dirX * moveSpeed * deltaTime;
+        move(dx, dy, map);
+    }
+
+    public void strafeRight(double deltaTime, Map map) {
+        // Move perpendicular to direction vector
+        double dx = dirY * moveSpeed * deltaTime;
+        double dy = -dirX * moveSpeed * deltaTime;
+        move(dx, dy, map);
+    }
+
+    public void turnLeft(double deltaTime) {
+        rotate(-rotSpeed * deltaTime);
+    }
+
+    public void turnRight(double deltaTime) {
+        rotate(rotSpeed * deltaTime);
+    }
+
+    // Getters
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public double getDirX() { return dirX; }
+    public double getDirY() { return dirY; }
+    public double getPlaneX() { return planeX; }
+    public double getPlaneY() { return planeY; }
+    public double getAngle() { return angle; }
+    public long getVersion() { return version; }
+
+    // Setters
+    public void setMoveSpeed(double moveSpeed) { this.moveSpeed = moveSpeed; }
+    public void setRotSpeed(double rotSpeed) { this.rotSpeed = rotSpeed; }
+}
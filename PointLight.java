@@ -0,0 +1,23 @@
+package com.example.raycastinggame;
+
+/** A static point light, baked into a Lightmap. */
+final class PointLight {
+    final double x;
+    final double y;
+    final double radius;
+    final double intensity;
+
+    /**
+     * @param radius    distance at which the light has faded to nothing
+     * @param intensity brightness at the light itself, where 1 is full light
+     */
+    PointLight(double x, double y, double radius, double intensity) {
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("radius must be positive: " + radius);
+        }
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+        this.intensity = intensity;
+    }
+}
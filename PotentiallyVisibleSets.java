@@ -0,0 +1,459 @@
+package com.example.raycastinggame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * For every open cell of a Map, the cells that can be seen from somewhere
+ * inside it, out to a radius in cells along each axis. Lets the renderer and
+ * game logic throw away entities in cells the camera can't see before doing
+ * any per-column work. Cells further away count as visible.
+ *
+ * Sets are conservative: a cell is left out only when no straight line from
+ * any point of the source cell reaches it past the walls (see CellTracer).
+ * An entity can still show beyond its own cell, so queries about one should
+ * cover its whole footprint, as canSeeArea does.
+ *
+ * Each set is stored as sorted runs of row-major cell indexes, start
+ * inclusive and end exclusive; the open rows of a room compress to one run
+ * each. Sets are built in parallel on the common fork-join pool.
+ *
+ * Instances never change. update() makes a new one for a later snapshot of
+ * the same map, sharing every set the edits can't have touched, so each
+ * thread can keep its own and bring it up to date whenever it likes.
+ */
+final class PotentiallyVisibleSets {
+    // Cells per fork-join leaf
+    private static final int CELLS_PER_TASK = 8;
+
+    private final Map map;
+    private final MapSnapshot tiles;
+    private final int radius;
+    private final int width;
+    private final int height;
+    // Runs per row-major cell, null for walls
+    private final int[][] sets;
+    private final int rebuiltCells;
+
+    private PotentiallyVisibleSets(Map map, MapSnapshot tiles, int radius, int[][] sets, int rebuiltCells) {
+        this.map = map;
+        this.tiles = tiles;
+        this.radius = radius;
+        this.width = tiles.getWidth();
+        this.height = tiles.getHeight();
+        this.sets = sets;
+        this.rebuiltCells = rebuiltCells;
+    }
+
+    /** Sets for every open cell of the map as it is now, out to radius cells along each axis. */
+    static PotentiallyVisibleSets build(Map map, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("radius must be at least 1: " + radius);
+        }
+        MapSnapshot tiles = map.snapshot();
+        int cells = tiles.getWidth() * tiles.getHeight();
+        int[] all = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            all[cell] = cell;
+        }
+        int[][] sets = new int[cells][];
+        trace(tiles, radius, sets, all, cells);
+        return new PotentiallyVisibleSets(map, tiles, radius, sets, cells);
+    }
+
+    /**
+     * Sets for next, a later snapshot of the same map. Only cells that
+     * changed, and cells that could see one of them, are traced again:
+     * no line from any other cell ever reached an edit. Returns this when
+     * next is the snapshot these sets were made from.
+     */
+    PotentiallyVisibleSets update(MapSnapshot next) {
+        if (next == tiles) {
+            return this;
+        }
+        if (next.getWidth() != width || next.getHeight() != height) {
+            throw new IllegalArgumentException("Snapshot of a different map");
+        }
+
+        // Cells whose tile differs, found by comparing the changed chunks
+        int[] edits = new int[16];
+        int editCount = 0;
+        int stride = next.getStride();
+        for (int chunk = 0; chunk < next.getChunkCount(); chunk++) {
+            if (!next.chunkChanged(tiles, chunk)) {
+                continue;
+            }
+            int end = Math.min(stride * (height + 2), (chunk + 1) << MapSnapshot.CHUNK_SHIFT);
+            for (int i = chunk << MapSnapshot.CHUNK_SHIFT; i < end; i++) {
+                int x = i % stride - 1;
+                int y = i / stride - 1;
+                if (x >= 0 && x < width && y >= 0 && y < height && next.tileAt(i) != tiles.tileAt(i)) {
+                    if (editCount == edits.length) {
+                        edits = Arrays.copyOf(edits, editCount * 2);
+                    }
+                    edits[editCount++] = y * width + x;
+                }
+            }
+        }
+        if (editCount == 0) {
+            return new PotentiallyVisibleSets(map, next, radius, sets, 0);
+        }
+
+        // Only cells within the radius of an edit can have it in their set.
+        // Each cell is taken from the first edit whose square holds it and
+        // tested against every edit near it then.
+        int[] redo = new int[16];
+        int count = 0;
+        for (int e = 0; e < editCount; e++) {
+            int editX = edits[e] % width;
+            int editY = edits[e] / width;
+            for (int y = Math.max(0, editY - radius); y <= Math.min(height - 1, editY + radius); y++) {
+                for (int x = Math.max(0, editX - radius); x <= Math.min(width - 1, editX + radius); x++) {
+                    if (nearEdit(edits, e, x, y) || !affected(edits, editCount, x, y)) {
+                        continue;
+                    }
+                    if (count == redo.length) {
+                        redo = Arrays.copyOf(redo, count * 2);
+                    }
+                    redo[count++] = y * width + x;
+                }
+            }
+        }
+
+        int[][] updated = sets.clone();
+        trace(next, radius, updated, redo, count);
+        return new PotentiallyVisibleSets(map, next, radius, updated, count);
+    }
+
+    // Whether cell (x, y) is within the radius of any of the first count edits
+    private boolean nearEdit(int[] edits, int count, int x, int y) {
+        for (int e = 0; e < count; e++) {
+            if (Math.abs(edits[e] % width - x) <= radius && Math.abs(edits[e] / width - y) <= radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether cell (x, y) is an edit or has one in its set
+    private boolean affected(int[] edits, int count, int x, int y) {
+        int cell = y * width + x;
+        int[] runs = sets[cell];
+        for (int e = 0; e < count; e++) {
+            if (edits[e] == cell || (runs != null && contains(runs, edits[e]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether cell (toX, toY) may be visible from cell (fromX, fromY). True
+     * wherever nothing is known: from outside the map or inside a wall, and
+     * to cells past the radius. False for targets outside the map.
+     */
+    boolean canSee(int fromX, int fromY, int toX, int toY) {
+        if (fromX < 0 || fromX >= width || fromY < 0 || fromY >= height) {
+            return true;
+        }
+        if (toX < 0 || toX >= width || toY < 0 || toY >= height) {
+            return false;
+        }
+        if (Math.abs(toX - fromX) > radius || Math.abs(toY - fromY) > radius) {
+            return true;
+        }
+        int[] runs = sets[fromY * width + fromX];
+        return runs == null || contains(runs, toY * width + toX);
+    }
+
+    /** Whether any cell overlapping the box [minX, maxX] x [minY, maxY] may be visible. */
+    boolean canSeeArea(int fromX, int fromY, double minX, double minY, double maxX, double maxY) {
+        int lastX = (int)Math.floor(maxX);
+        int lastY = (int)Math.floor(maxY);
+        for (int y = (int)Math.floor(minY); y <= lastY; y++) {
+            for (int x = (int)Math.floor(minX); x <= lastX; x++) {
+                if (canSee(fromX, fromY, x, y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    Map getMap() { return map; }
+    long getVersion() { return tiles.getVersion(); }
+    int getRadius() { return radius; }
+    // Cells traced to make this instance: all of them for build(), the
+    // affected ones for update()
+    int getRebuiltCells() { return rebuiltCells; }
+
+    int getRunCount() {
+        int runs = 0;
+        for (int[] set : sets) {
+            runs += set == null ? 0 : set.length / 2;
+        }
+        return runs;
+    }
+
+    private static boolean contains(int[] runs, int cell) {
+        // Last run starting at or before cell
+        int low = 0;
+        int high = runs.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runs[2 * mid] <= cell) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && cell < runs[2 * high + 1];
+    }
+
+    // Trace the first count cells listed into sets, in parallel
+    private static void trace(MapSnapshot tiles, int radius, int[][] sets, int[] cells, int count) {
+        ForkJoinPool.commonPool().invoke(new TraceTask(tiles, radius, sets, cells, 0, count));
+    }
+
+    // Never serialized; RecursiveAction is Serializable only by inheritance
+    @SuppressWarnings("serial")
+    private static final class TraceTask extends RecursiveAction {
+        private final MapSnapshot tiles;
+        private final int radius;
+        private final int[][] sets;
+        private final int[] cells;
+        private final int from;
+        private final int to;
+
+        TraceTask(MapSnapshot tiles, int radius, int[][] sets, int[] cells, int from, int to) {
+            this.tiles = tiles;
+            this.radius = radius;
+            this.sets = sets;
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CELLS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TraceTask(tiles, radius, sets, cells, from, mid),
+                        new TraceTask(tiles, radius, sets, cells, mid, to));
+                return;
+            }
+            CellTracer tracer = new CellTracer(tiles, radius);
+            for (int i = from; i < to; i++) {
+                int cell = cells[i];
+                sets[cell] = tracer.trace(cell % tiles.getWidth(), cell / tiles.getWidth());
+            }
+        }
+    }
+
+    /**
+     * Traces one cell at a time, exactly and conservatively. Every segment
+     * from a point in the source cell to a point in another cell runs
+     * mostly along x or mostly along y, forwards or backwards, so there
+     * are four sweeps. Each one takes local axes u along the sweep and v
+     * across it, with the source cell at [0, 1] x [0, 1]. The lines
+     * v = a + b u with |b| <= 1 through the source are kept as convex
+     * polygons in (a, b), carried column by column, and clipped to the
+     * open gaps of each column. A column's cells are visible if any line
+     * still alive crosses them. Lines that only graze a wall corner are
+     * kept, so nothing seen by a ray from inside the source cell is ever
+     * left out.
+     *
+     * The scratch is one bit per cell of the square around the source that
+     * the sweeps can reach, cleared between cells.
+     */
+    private static final class CellTracer {
+        // Gaps are widened by this much, so lines that only touch a wall
+        // survive clipping as slivers instead of rounding away
+        private static final double SLACK = 1e-9;
+
+        // Lines through the source cell with |b| <= 1, split at b = 0 into
+        // two convex polygons, as (a, b) vertex pairs
+        private static final double[] RISING = { 0, 0, 1, 0, 1, 1, -1, 1 };
+        private static final double[] FALLING = { 0, -1, 2, -1, 1, 0, 0, 0 };
+
+        private final MapSnapshot tiles;
+        private final int radius;
+        private final int side;
+        private final long[] seen;
+        private int[] runs = new int[64];
+        private List<double[]> beams = new ArrayList<>();
+        private List<double[]> nextBeams = new ArrayList<>();
+
+        CellTracer(MapSnapshot tiles, int radius) {
+            this.tiles = tiles;
+            this.radius = radius;
+            // The square of cells within radius, and the neighbours of a
+            // source with radius 0
+            this.side = 2 * radius + 3;
+            this.seen = new long[(side * side + 63) >> 6];
+        }
+
+        // Runs of cell (cellX, cellY), or null when it is a wall
+        int[] trace(int cellX, int cellY) {
+            if (tiles.tileAt(tiles.index(cellX, cellY)) == Map.WALL) {
+                return null;
+            }
+            Arrays.fill(seen, 0);
+
+            // Neighbours can be reached by segments shorter than a cell along
+            // either axis, which no sweep looks at; they are always visible
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    mark(dx, dy);
+                }
+            }
+            for (int sweep = 0; sweep < 4; sweep++) {
+                sweep(cellX, cellY, sweep);
+            }
+            return encode(cellX, cellY);
+        }
+
+        private void sweep(int cellX, int cellY, int sweep) {
+            beams.clear();
+            beams.add(RISING);
+            beams.add(FALLING);
+            for (int column = 1; column <= radius && !beams.isEmpty(); column++) {
+                nextBeams.clear();
+                for (double[] beam : beams) {
+                    // Where the beam's lines cross this column
+                    double low = Double.POSITIVE_INFINITY;
+                    double high = Double.NEGATIVE_INFINITY;
+                    for (int i = 0; i < beam.length; i += 2) {
+                        double enter = beam[i] + beam[i + 1] * column;
+                        double leave = enter + beam[i + 1];
+                        low = Math.min(low, Math.min(enter, leave));
+                        high = Math.max(high, Math.max(enter, leave));
+                    }
+
+                    // Mark every cell crossed, and go on through each run of
+                    // open cells with just the lines that fit in it
+                    int first = (int)Math.floor(low);
+                    int last = (int)Math.floor(high);
+                    int gapStart = first;
+                    for (int row = first; row <= last; row++) {
+                        int dx = offsetX(sweep, column, row);
+                        int dy = offsetY(sweep, column, row);
+                        // Steep lines leave the square before its last column
+                        if (Math.abs(row) <= radius) {
+                            mark(dx, dy);
+                        }
+                        if (isWall(cellX + dx, cellY + dy)) {
+                            passGap(beam, column, gapStart, row);
+                            gapStart = row + 1;
+                        }
+                    }
+                    passGap(beam, column, gapStart, last + 1);
+                }
+                List<double[]> swap = beams;
+                beams = nextBeams;
+                nextBeams = swap;
+            }
+        }
+
+        // Keep the lines of beam that stay within rows [from, to) all the
+        // way across column
+        private void passGap(double[] beam, int column, int from, int to) {
+            if (from >= to) {
+                return;
+            }
+            double bottom = from - SLACK;
+            double top = to + SLACK;
+            // a + b u >= bottom and <= top at both edges of the column
+            double[] clipped = clip(beam, -1, -column, -bottom);
+            clipped = clip(clipped, -1, -(column + 1), -bottom);
+            clipped = clip(clipped, 1, column, top);
+            clipped = clip(clipped, 1, column + 1, top);
+            if (clipped.length > 0) {
+                nextBeams.add(clipped);
+            }
+        }
+
+        // The part of convex polygon where alpha a + beta b <= gamma
+        private static double[] clip(double[] polygon, double alpha, double beta, double gamma) {
+            int vertices = polygon.length / 2;
+            double[] result = new double[polygon.length + 2];
+            int length = 0;
+            for (int i = 0; i < vertices; i++) {
+                int j = (i + 1) % vertices;
+                double a0 = polygon[2 * i];
+                double b0 = polygon[2 * i + 1];
+                double a1 = polygon[2 * j];
+                double b1 = polygon[2 * j + 1];
+                double d0 = alpha * a0 + beta * b0 - gamma;
+                double d1 = alpha * a1 + beta * b1 - gamma;
+                if (d0 <= 0) {
+                    result[length++] = a0;
+                    result[length++] = b0;
+                }
+                if ((d0 < 0 && d1 > 0) || (d0 > 0 && d1 < 0)) {
+                    double t = d0 / (d0 - d1);
+                    result[length++] = a0 + t * (a1 - a0);
+                    result[length++] = b0 + t * (b1 - b0);
+                }
+            }
+            return length == result.length ? result : Arrays.copyOf(result, length);
+        }
+
+        // Sweeps 0 to 3 run along +x, -x, +y and -y
+        private static int offsetX(int sweep, int column, int row) {
+            return sweep == 0 ? column : sweep == 1 ? -column : row;
+        }
+
+        private static int offsetY(int sweep, int column, int row) {
+            return sweep == 2 ? column : sweep == 3 ? -column : row;
+        }
+
+        private boolean isWall(int x, int y) {
+            if (x < -1 || x > tiles.getWidth() || y < -1 || y > tiles.getHeight()) {
+                return true;
+            }
+            return tiles.tileAt(tiles.index(x, y)) == Map.WALL;
+        }
+
+        private void mark(int dx, int dy) {
+            int bit = (dy + radius + 1) * side + (dx + radius + 1);
+            seen[bit >>> 6] |= 1L << bit;
+        }
+
+        // The marked cells inside the map as runs of row-major indexes
+        private int[] encode(int cellX, int cellY) {
+            int width = tiles.getWidth();
+            int height = tiles.getHeight();
+            int minX = Math.max(0, cellX - radius - 1);
+            int maxX = Math.min(width - 1, cellX + radius + 1);
+            int minY = Math.max(0, cellY - radius - 1);
+            int maxY = Math.min(height - 1, cellY + radius + 1);
+
+            int length = 0;
+            for (int y = minY; y <= maxY; y++) {
+                int rowBit = (y - cellY + radius + 1) * side - cellX + radius + 1;
+                for (int x = minX; x <= maxX; x++) {
+                    int bit = rowBit + x;
+                    if ((seen[bit >>> 6] & (1L << bit)) == 0) {
+                        continue;
+                    }
+                    int cell = y * width + x;
+                    if (length > 0 && runs[length - 1] == cell) {
+                        // Carries on the run before, across a row end too
+                        runs[length - 1] = cell + 1;
+                    } else {
+                        if (length + 2 > runs.length) {
+                            runs = Arrays.copyOf(runs, runs.length * 2);
+                        }
+                        runs[length++] = cell;
+                        runs[length++] = cell + 1;
+                    }
+                }
+            }
+            return Arrays.copyOf(runs, length);
+        }
+    }
+}
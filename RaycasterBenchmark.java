@@ -0,0 +1,577 @@
+package com.example.raycastinggame;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Headless entry point: renders frames along a fixed camera path into the
+ * off-screen framebuffer and reports throughput. Needs no display, so it
+ * runs on CI machines.
+ *
+ * Usage: RaycasterBenchmark [--frames N] [--warmup N] [--width W] [--height H]
+ *                           [--threads T] [--out frame.ppm|frame.png]
+ *                           [--map world.map [--generate WIDTHxHEIGHT] [--fill F]]
+ *                           [--skip true|false] [--coherence true|false] [--view-distance D]
+ *                           [--textures true|false] [--floors true|false]
+ *                           [--sprites N] [--budget MS] [--stats timings.csv]
+ *                           [--path orbit|walk|idle] [--vector true|false]
+ *                           [--lights N] [--layout row|column] [--pvs RADIUS]
+ *                           [--batch N [--raw frames.rgb]] [--engine grid|bsp]
+ *                           [--see-through N]
+ *
+ * With --map the world is opened from a map file and the camera starts in
+ * its centre cell; --generate first writes a random stress world there,
+ * with fraction F of its cells walls. --budget turns on dynamic resolution
+ * aiming for MS per frame and reports how many frames ran at each step.
+ * --stats times each stage of the measured frames, prints the means and
+ * DDA steps per ray, and writes the histograms as CSV.
+ *
+ * The camera orbits by default. --path walk only moves it back and forth,
+ * which reuses the ray tables, and idle never moves it, so every frame
+ * after the first is skipped as unchanged.
+ *
+ * --coherence false traces every column's ray instead of only the ends of
+ * runs that hit the same wall face.
+ *
+ * --vector casts with the Vector API packet engine (VectorDda), which needs
+ * --add-modules jdk.incubator.vector on the java command line.
+ *
+ * --lights bakes N point lights on random open cells into a lightmap and
+ * shades every frame with it, fogged out to 16 cells.
+ *
+ * --layout column renders into a column-major framebuffer. Frame times
+ * then include the transpose to rows that presenting does.
+ *
+ * --pvs builds potentially visible sets out to RADIUS cells and culls
+ * sprites the camera's cell can't see before projecting them.
+ *
+ * --batch renders N random poses on open cells with a BatchRenderer of
+ * --threads single-threaded renderers, one frame each, instead of following
+ * the camera path, after --warmup poses it throws away. --raw streams every
+ * frame to a raw RGB file; --out still gets the last one.
+ *
+ * --see-through turns N random open cells of the built-in map into glass
+ * and grates, alternately, which rays pass and draw as layers.
+ *
+ * --engine bsp turns the map's walls into line segments, builds a BspTree
+ * of them and follows the same camera path with a BspRenderer. It draws
+ * flat walls only, so compare it with --textures false --floors false;
+ * the texture, floor, sprite, lighting and threading options are ignored,
+ * and maps with glass or grates are refused.
+ */
+public class RaycasterBenchmark {
+    // Camera path: a full turn and a steady walk spread across the run
+    private static final double TURNS = 2.0;
+    private static final double WALK_SECONDS_PER_FRAME = 1.0 / 60.0;
+
+    private int frames = 600;
+    private int warmup = 120;
+    private int width = 1920;
+    private int height = 1080;
+    private int threads = 1;
+    private Path out;
+    private Path mapFile;
+    private String generate;
+    private double fill = 0.02;
+    private boolean skip = true;
+    private boolean coherence = true;
+    private double viewDistance = Double.POSITIVE_INFINITY;
+    private boolean textures = true;
+    private boolean floors = true;
+    private int spriteCount;
+    private double budgetMillis;
+    private Path statsFile;
+    private String path = "orbit";
+    private boolean vector;
+    private int lightCount;
+    private boolean columnMajor;
+    private int pvsRadius;
+    private int batch;
+    private Path rawFile;
+    private String engine = "grid";
+    private int seeThroughCount;
+
+    public static void main(String[] args) throws IOException {
+        RaycasterBenchmark benchmark = new RaycasterBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--frames": frames = Integer.parseInt(value); break;
+                case "--warmup": warmup = Integer.parseInt(value); break;
+                case "--width": width = Integer.parseInt(value); break;
+                case "--height": height = Integer.parseInt(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--out": out = Paths.get(value); break;
+                case "--map": mapFile = Paths.get(value); break;
+                case "--generate": generate = value; break;
+                case "--fill": fill = Double.parseDouble(value); break;
+                case "--skip": skip = RaycastingGame.parseStrictBoolean(arg, value); break;
+                case "--coherence": coherence = RaycastingGame.parseStrictBoolean(arg, value); break;
+                case "--view-distance": viewDistance = Double.parseDouble(value); break;
+                case "--textures": textures = RaycastingGame.parseStrictBoolean(arg, value); break;
+                case "--floors": floors = RaycastingGame.parseStrictBoolean(arg, value); break;
+                case "--sprites": spriteCount = Integer.parseInt(value); break;
+                case "--budget": budgetMillis = Double.parseDouble(value); break;
+                case "--stats": statsFile = Paths.get(value); break;
+                case "--path": path = value; break;
+                case "--vector": vector = RaycastingGame.parseStrictBoolean(arg, value); break;
+                case "--lights": lightCount = Integer.parseInt(value); break;
+                case "--layout": columnMajor = parseLayout(value); break;
+                case "--pvs": pvsRadius = Integer.parseInt(value); break;
+                case "--batch": batch = Integer.parseInt(value); break;
+                case "--raw": rawFile = Paths.get(value); break;
+                case "--engine": engine = value; break;
+                case "--see-through": seeThroughCount = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (frames < 1) {
+            throw new IllegalArgumentException("--frames must be at least 1");
+        }
+        if (!path.equals("orbit") && !path.equals("walk") && !path.equals("idle")) {
+            throw new IllegalArgumentException("--path must be orbit, walk or idle: " + path);
+        }
+        if (!engine.equals("grid") && !engine.equals("bsp")) {
+            throw new IllegalArgumentException("--engine must be grid or bsp: " + engine);
+        }
+        if (generate != null && mapFile == null) {
+            throw new IllegalArgumentException("--generate needs --map");
+        }
+        if (rawFile != null && batch < 1) {
+            throw new IllegalArgumentException("--raw needs --batch");
+        }
+        if (seeThroughCount > 0 && mapFile != null) {
+            throw new IllegalArgumentException("--see-through needs the built-in map; map files are read-only");
+        }
+        if (seeThroughCount > 0 && engine.equals("bsp")) {
+            throw new IllegalArgumentException("--see-through needs --engine grid; BSP segments are opaque walls only");
+        }
+    }
+
+    private static boolean parseLayout(String value) {
+        if (!value.equals("row") && !value.equals("column")) {
+            throw new IllegalArgumentException("--layout must be row or column: " + value);
+        }
+        return value.equals("column");
+    }
+
+    private void run() throws IOException {
+        if (vector && PacketCaster.loadVector(width) == null) {
+            throw new IllegalStateException("--vector needs --add-modules jdk.incubator.vector");
+        }
+        Map map = loadMap();
+        if (seeThroughCount > 0) {
+            scatterSeeThrough(map);
+        }
+        if (engine.equals("bsp")) {
+            runBsp(map);
+            return;
+        }
+        SpriteList sprites = spriteCount > 0 ? scatterSprites(map) : null;
+        Lightmap lightmap = null;
+        if (lightCount > 0) {
+            long bakeStart = System.nanoTime();
+            lightmap = new Lightmap(map, scatterLights(map), 0.2);
+            System.out.printf(Locale.ROOT, "Lightmap     %d lights baked in %.3f ms%n",
+                    lightCount, (System.nanoTime() - bakeStart) / 1_000_000.0);
+        }
+        PotentiallyVisibleSets visibleSets = null;
+        if (pvsRadius > 0) {
+            long buildStart = System.nanoTime();
+            visibleSets = PotentiallyVisibleSets.build(map, pvsRadius);
+            System.out.printf(Locale.ROOT, "PVS          %d cells to radius %d built in %.3f ms, %d runs%n",
+                    visibleSets.getRebuiltCells(), pvsRadius, (System.nanoTime() - buildStart) / 1_000_000.0,
+                    visibleSets.getRunCount());
+        }
+        if (batch > 0) {
+            runBatch(map, sprites, lightmap, visibleSets);
+            return;
+        }
+
+        // Warm up the JIT on its own camera so the measured path always starts
+        // from the same pose
+        Renderer warmupRenderer = createRenderer(map, newPlayer(map), sprites, lightmap, visibleSets);
+        for (int i = 0; i < warmup; i++) {
+            warmupRenderer.renderFrame();
+        }
+        warmupRenderer.shutdown();
+
+        Player player = newPlayer(map);
+        Renderer renderer = createRenderer(map, player, sprites, lightmap, visibleSets);
+        long[] frameNanos = new long[frames];
+        double turnPerFrame = TURNS * 2 * Math.PI / frames;
+        DynamicResolution dynamicResolution = budgetMillis > 0
+                ? new DynamicResolution(DynamicResolution.DEFAULT_SCALES, budgetMillis, 20) : null;
+        int[] stepFrames = new int[renderer.getResolutionStepCount()];
+        long rays = 0;
+        int reused = 0;
+        FrameStats stats = statsFile != null ? new FrameStats() : null;
+        renderer.setFrameStats(stats);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            moveAlongPath(player, i, turnPerFrame, map);
+
+            long frameStart = System.nanoTime();
+            CameraPose pose = player.snapshot(1);
+            boolean current = renderer.isFrameCurrent(pose);
+            if (!current) {
+                renderer.renderFrame(pose, null);
+                if (columnMajor) {
+                    long presentStart = System.nanoTime();
+                    renderer.getRowPixels();
+                    if (stats != null) {
+                        stats.add(FrameStage.PRESENT, System.nanoTime() - presentStart);
+                    }
+                }
+            }
+            frameNanos[i] = System.nanoTime() - frameStart;
+            if (current) {
+                reused++;
+                continue;
+            }
+            if (stats != null) {
+                stats.add(FrameStage.FRAME, frameNanos[i]);
+                stats.endFrame();
+            }
+
+            rays += renderer.getScreenWidth();
+            stepFrames[renderer.getResolutionStep()]++;
+            if (dynamicResolution != null) {
+                renderer.setResolutionStep(dynamicResolution.frameRendered(frameNanos[i]));
+            }
+        }
+        long totalNanos = System.nanoTime() - startTime;
+        renderer.shutdown();
+
+        report(frameNanos, totalNanos, rays);
+        if (reused > 0) {
+            System.out.printf(Locale.ROOT, "Reused       %d unchanged frames%n", reused);
+        }
+        if (dynamicResolution != null) {
+            for (int step = 0; step < stepFrames.length; step++) {
+                System.out.printf(Locale.ROOT, "Scale %.2f   %d frames%n",
+                        DynamicResolution.DEFAULT_SCALES[step], stepFrames[step]);
+            }
+        }
+        if (sprites != null) {
+            System.out.printf(Locale.ROOT, "Sprites      %d of %d visible in the last frame%n",
+                    renderer.getVisibleSpriteCount(), sprites.size());
+        }
+
+        if (stats != null) {
+            for (FrameStage stage : FrameStage.values()) {
+                System.out.printf(Locale.ROOT, "%-12s %.3f ms mean%n",
+                        stage.name().toLowerCase(Locale.ROOT), stats.getHistogram(stage).getMean() / 1_000_000.0);
+            }
+            System.out.printf(Locale.ROOT, "DDA steps    %.0f per frame, %.2f per ray%n",
+                    stats.getStepsPerFrame().getMean(), stats.getAverageStepsPerRay());
+            stats.writeCsv(statsFile);
+            System.out.println("Stage timings written to " + statsFile);
+        }
+
+        if (out != null) {
+            writeFrame(renderer.getRowPixels(), renderer.getScreenWidth(), renderer.getScreenHeight(), out);
+            System.out.println("Final frame written to " + out);
+        }
+    }
+
+    // One frame's step of the camera path
+    private void moveAlongPath(Player player, int frame, double turnPerFrame, Map map) {
+        if (path.equals("orbit")) {
+            player.rotate(turnPerFrame);
+            player.moveForward(WALK_SECONDS_PER_FRAME, map);
+        } else if (path.equals("walk")) {
+            // A second forward, a second back
+            if (frame % 120 < 60) {
+                player.moveForward(WALK_SECONDS_PER_FRAME, map);
+            } else {
+                player.moveBackward(WALK_SECONDS_PER_FRAME, map);
+            }
+        }
+    }
+
+    private void runBsp(Map map) throws IOException {
+        long buildStart = System.nanoTime();
+        List<Segment> segments = BspTree.segmentsOf(map);
+        BspTree tree = BspTree.build(segments);
+        System.out.printf(Locale.ROOT, "BSP          %d segments built in %.3f ms: %d nodes, depth %d, %d splits%n",
+                segments.size(), (System.nanoTime() - buildStart) / 1_000_000.0,
+                tree.getNodeCount(), tree.getDepth(), tree.getSplits());
+
+        BspRenderer warmupRenderer = new BspRenderer(tree, newPlayer(map), width, height);
+        for (int i = 0; i < warmup; i++) {
+            warmupRenderer.renderFrame();
+        }
+
+        // Every frame is drawn, even when the camera hasn't moved
+        Player player = newPlayer(map);
+        BspRenderer renderer = new BspRenderer(tree, player, width, height);
+        long[] frameNanos = new long[frames];
+        double turnPerFrame = TURNS * 2 * Math.PI / frames;
+        long nodes = 0;
+        long tested = 0;
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            moveAlongPath(player, i, turnPerFrame, map);
+            long frameStart = System.nanoTime();
+            renderer.renderFrame();
+            frameNanos[i] = System.nanoTime() - frameStart;
+            nodes += renderer.getNodesVisited();
+            tested += renderer.getSegmentsTested();
+        }
+        long totalNanos = System.nanoTime() - startTime;
+
+        report(frameNanos, totalNanos, (long)frames * width);
+        System.out.printf(Locale.ROOT, "Walked       %.0f nodes, %.0f segments per frame%n",
+                nodes / (double)frames, tested / (double)frames);
+
+        if (out != null) {
+            writeFrame(renderer.getPixels(), width, height, out);
+            System.out.println("Final frame written to " + out);
+        }
+    }
+
+    private void runBatch(Map map, SpriteList sprites, Lightmap lightmap,
+                          PotentiallyVisibleSets visibleSets) throws IOException {
+        BatchRenderer renderer = new BatchRenderer(map, width, height, threads,
+                each -> setUp(each, sprites, lightmap, visibleSets));
+        List<CameraPose> poses = randomPoses(map, warmup + batch);
+        if (warmup > 0) {
+            renderer.render(poses.subList(0, warmup), (index, frame) -> { });
+        }
+
+        int[] last = new int[width * height];
+        BatchRenderer.FrameConsumer keepLast = (index, frame) -> {
+            if (index == batch - 1) {
+                // The buffer is reused, so copy the frame out row-major
+                for (int y = 0; y < frame.height; y++) {
+                    for (int x = 0; x < frame.width; x++) {
+                        last[y * frame.width + x] = frame.pixels[frame.columnMajor
+                                ? x * frame.height + y : y * frame.width + x];
+                    }
+                }
+            }
+        };
+        BatchRenderer.Result result;
+        if (rawFile != null) {
+            try (BatchRenderer.RawWriter writer = new BatchRenderer.RawWriter(rawFile)) {
+                result = renderer.render(poses.subList(warmup, poses.size()), (index, frame) -> {
+                    writer.accept(index, frame);
+                    keepLast.accept(index, frame);
+                });
+            }
+        } else {
+            result = renderer.render(poses.subList(warmup, poses.size()), keepLast);
+        }
+        renderer.shutdown();
+
+        double seconds = result.nanos / 1_000_000_000.0;
+        System.out.printf(Locale.ROOT, "Resolution   %dx%d, %d renderer(s), %d poses, %s%n",
+                width, height, threads, batch, rawFile != null ? "raw frames to " + rawFile : "frames dropped");
+        System.out.printf(Locale.ROOT, "Frames/sec   %.1f%n", result.getFramesPerSecond());
+        System.out.printf(Locale.ROOT, "Busy         %.2f renderers on average%n", result.renderNanos / (double)result.nanos);
+        System.out.printf(Locale.ROOT, "Rays/sec     %.0f%n", (double)batch * width / seconds);
+
+        if (out != null) {
+            writeFrame(last, width, height, out);
+            System.out.println("Final frame written to " + out);
+        }
+    }
+
+    // Poses on random open cells facing random ways, the same ones every run
+    private static List<CameraPose> randomPoses(Map map, int count) {
+        List<CameraPose> poses = new ArrayList<>(count);
+        Random random = new Random(13);
+        while (poses.size() < count) {
+            int x = random.nextInt(map.getWidth());
+            int y = random.nextInt(map.getHeight());
+            if (map.isSolid(x, y)) {
+                continue;
+            }
+            // A Player's camera: unit direction, plane 0.9 across it
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            poses.add(new CameraPose(x + random.nextDouble(), y + random.nextDouble(),
+                    cos, sin, -sin * 0.9, cos * 0.9, CameraPose.IN_BETWEEN));
+        }
+        return poses;
+    }
+
+    private Map loadMap() throws IOException {
+        if (mapFile == null) {
+            return new Map();
+        }
+
+        if (generate != null) {
+            String[] size = generate.split("x");
+            if (size.length != 2) {
+                throw new IllegalArgumentException("--generate expects WIDTHxHEIGHT: " + generate);
+            }
+            MapFile.generate(mapFile, Integer.parseInt(size[0]), Integer.parseInt(size[1]), fill, 42);
+        }
+
+        long openStart = System.nanoTime();
+        Map map = MapFile.open(mapFile);
+        System.out.printf(Locale.ROOT, "Map          %dx%d opened in %.3f ms%n",
+                map.getWidth(), map.getHeight(), (System.nanoTime() - openStart) / 1_000_000.0);
+        return map;
+    }
+
+    // Sprites on random open cells, the same ones every run
+    private SpriteList scatterSprites(Map map) {
+        SpriteList sprites = new SpriteList(map.getWidth(), map.getHeight());
+        Random random = new Random(7);
+        while (sprites.size() < spriteCount) {
+            int x = random.nextInt(map.getWidth());
+            int y = random.nextInt(map.getHeight());
+            if (!map.isSolid(x, y)) {
+                sprites.add(x + random.nextDouble(), y + random.nextDouble(), random.nextInt(3));
+            }
+        }
+        return sprites;
+    }
+
+    // Glass and grates on open cells, never the one the camera starts in
+    private void scatterSeeThrough(Map map) {
+        Player start = newPlayer(map);
+        Random random = new Random(17);
+        int placed = 0;
+        while (placed < seeThroughCount) {
+            int x = random.nextInt(map.getWidth());
+            int y = random.nextInt(map.getHeight());
+            if (!map.isSolid(x, y) && (x != (int)start.getX() || y != (int)start.getY())) {
+                map.setTile(x, y, placed % 2 == 0 ? Map.GLASS : Map.GRATE);
+                placed++;
+            }
+        }
+    }
+
+    // Lights on random open cells, the same ones every run
+    private List<PointLight> scatterLights(Map map) {
+        List<PointLight> lights = new ArrayList<>();
+        Random random = new Random(11);
+        while (lights.size() < lightCount) {
+            int x = random.nextInt(map.getWidth());
+            int y = random.nextInt(map.getHeight());
+            if (!map.isSolid(x, y)) {
+                lights.add(new PointLight(x + 0.5, y + 0.5, 3 + random.nextDouble() * 5, 0.6 + random.nextDouble() * 0.4));
+            }
+        }
+        return lights;
+    }
+
+    private Player newPlayer(Map map) {
+        if (mapFile == null) {
+            return new Player(2.5, 2.5, 1, 0);
+        }
+        return new Player(map.getWidth() / 2 + 0.5, map.getHeight() / 2 + 0.5, 1, 0);
+    }
+
+    private Renderer createRenderer(Map map, Player player, SpriteList sprites, Lightmap lightmap,
+                                    PotentiallyVisibleSets visibleSets) {
+        Renderer renderer = new Renderer(map, player, width, height);
+        renderer.setMode(RenderMode.FRAMEBUFFER);
+        renderer.setThreadCount(threads);
+        setUp(renderer, sprites, lightmap, visibleSets);
+        return renderer;
+    }
+
+    // Every option but the thread count, which batches keep at one per renderer
+    private void setUp(Renderer renderer, SpriteList sprites, Lightmap lightmap,
+                       PotentiallyVisibleSets visibleSets) {
+        renderer.setEmptySpaceSkipping(skip);
+        renderer.setSpanCoherence(coherence);
+        renderer.setMaxViewDistance(viewDistance);
+        renderer.setTextureAtlas(textures ? TextureAtlas.createDefault() : null);
+        renderer.setFloorCasting(floors);
+        renderer.setColumnMajor(columnMajor);
+        if (vector) {
+            renderer.setPacketCaster(PacketCaster.loadVector(width));
+        }
+        if (lightmap != null) {
+            renderer.setShading(new ShadeTable(0xFF000000, 4, 16), lightmap);
+        }
+        if (budgetMillis > 0) {
+            renderer.setResolutionScales(DynamicResolution.DEFAULT_SCALES);
+        }
+        if (sprites != null) {
+            renderer.setSprites(sprites, TextureAtlas.createDefaultSprites());
+        }
+        renderer.setVisibleSets(visibleSets);
+    }
+
+    private void report(long[] frameNanos, long totalNanos, long rays) {
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        double seconds = totalNanos / 1_000_000_000.0;
+        boolean bsp = engine.equals("bsp");
+
+        System.out.printf(Locale.ROOT, "Resolution   %dx%d, %d thread(s), %d frames, %s, %s%n",
+                width, height, bsp ? 1 : threads, frames,
+                bsp ? "BSP segments" : vector ? "vector packets" : skip ? "skipping on" : "skipping off",
+                columnMajor ? "column-major" : "row-major");
+        System.out.printf(Locale.ROOT, "Frames/sec   %.1f%n", frames / seconds);
+        System.out.printf(Locale.ROOT, "Frame p50    %.3f ms%n", percentile(sorted, 0.50) / 1_000_000.0);
+        System.out.printf(Locale.ROOT, "Frame p99    %.3f ms%n", percentile(sorted, 0.99) / 1_000_000.0);
+        System.out.printf(Locale.ROOT, "Rays/sec     %.0f%n", rays / seconds);
+    }
+
+    // Nearest-rank percentile over an ascending array
+    static long percentile(long[] sorted, double fraction) {
+        int rank = (int)Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    static void writeFrame(int[] pixels, int width, int height, Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".png")) {
+            writePng(pixels, width, height, file);
+        } else {
+            writePpm(pixels, width, height, file);
+        }
+    }
+
+    private static void writePpm(int[] pixels, int width, int height, Path file) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file))) {
+            stream.write(String.format(Locale.ROOT, "P6\n%d %d\n255\n", width, height)
+                    .getBytes(StandardCharsets.US_ASCII));
+            for (int argb : pixels) {
+                stream.write((argb >> 16) & 0xFF);
+                stream.write((argb >> 8) & 0xFF);
+                stream.write(argb & 0xFF);
+            }
+        }
+    }
+
+    private static void writePng(int[] pixels, int width, int height, Path file) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+}
@@ -8,8 +8,14 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 public class RaycastingGame extends Application {
@@ -17,32 +23,181 @@ public class RaycastingGame extends Application {
     private static final int SCREEN_WIDTH = 1920;
     private static final int SCREEN_HEIGHT = 1080;
 
+    // Ray casting threads, override with -Draycaster.threads=N
+    private static final int RENDER_THREADS =
+            Integer.getInteger("raycaster.threads", Runtime.getRuntime().availableProcessors());
+
+    // Frame time adaptive resolution aims for, override with -Draycaster.frameBudgetMs=N.
+    // Below 16.7 ms so the upload and the rest of the pulse still fit in a 60 Hz frame.
+    private static final double FRAME_BUDGET_MS =
+            Double.parseDouble(System.getProperty("raycaster.frameBudgetMs", "12"));
+
+    // Framebuffer frames are drawn off the FX thread unless -Draycaster.renderThread=false
+    private static final boolean USE_RENDER_THREAD = booleanProperty("raycaster.renderThread", true);
+
+    // Trace rays in SIMD packets with -Draycaster.vectorDda=true; needs
+    // --add-modules jdk.incubator.vector, otherwise the scalar loop stays
+    private static final boolean USE_VECTOR_DDA = booleanProperty("raycaster.vectorDda", false);
+
+    // Simulation runs in fixed steps, override the rate with -Draycaster.tickRate=N
+    private static final double SIMULATION_STEP = 1.0 / Integer.getInteger("raycaster.tickRate", 120);
+
+    // Colour distant walls and floors fade into with lighting on (F6)
+    private static final int FOG_ARGB = 0xFF101018;
+
+    // The room, split in two by a wall with a door in it at DOOR_X, DOOR_Y
+    private static final int[][] LEVEL = {
+            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
+            {1, 0, 0, 0, 0, 0, 1, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 2, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 1, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 1, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 1, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 1, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 3, 0, 0, 1},
+            {1, 0, 0, 0, 0, 0, 1, 0, 0, 1},
+            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1}
+    };
+    private static final int DOOR_X = 6;
+    private static final int DOOR_Y = 4;
+    private static final double DOOR_SECONDS = 0.75;
+
+    // How far potentially visible sets reach; the whole room and then some
+    private static final int PVS_RADIUS = 16;
+
+    // Longest frame the simulation catches up on; after a longer stall (a
+    // debugger, a dragged window) the game slows down instead of running
+    // hundreds of steps at once
+    private static final double MAX_FRAME_TIME = 0.25;
+
     // Game components
     private Player player;
     private Map map;
+    private Doors doors;
     private Renderer renderer;
     private InputHandler inputHandler;
+    private RenderThread renderThread;
+    private DynamicResolution dynamicResolution;
+    private boolean adaptiveResolution = booleanProperty("raycaster.adaptive", false);
+    private final FrameStats frameStats = new FrameStats();
+    private boolean showStats;
+    private ShadeTable shading;
+    private Lightmap lightmap;
+    private boolean lighting = booleanProperty("raycaster.lighting", false);
+    private GraphicsContext gc;
 
     // Input tracking
     private Set<KeyCode> activeKeys = new HashSet<>();
 
+    // Simulated time not yet consumed by a whole step
+    private double accumulator;
+
     @Override
     public void start(Stage primaryStage) {
         // Create our canvas to draw on
         Canvas canvas = new Canvas(SCREEN_WIDTH, SCREEN_HEIGHT);
-        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc = canvas.getGraphicsContext2D();
 
         // Initialize game components
-        map = new Map();
+        // One Map for collision, doors and the renderer alike
+        map = new Map(LEVEL);
+        doors = new Doors(map, DOOR_SECONDS);
+        doors.add(DOOR_X, DOOR_Y);
         player = new Player(2.5, 2.5, 1, 0); // Starting position and direction
         renderer = new Renderer(gc, map, player, SCREEN_WIDTH, SCREEN_HEIGHT);
-        inputHandler = new InputHandler(player);
+        renderer.setThreadCount(RENDER_THREADS);
+        renderer.setTextureAtlas(TextureAtlas.createDefault());
+        renderer.setSprites(createSprites(map), TextureAtlas.createDefaultSprites());
+        renderer.setDoors(doors);
+        renderer.setVisibleSets(PotentiallyVisibleSets.build(map, PVS_RADIUS));
+        renderer.setResolutionScales(DynamicResolution.DEFAULT_SCALES);
+        renderer.setFrameStats(frameStats);
+        shading = new ShadeTable(FOG_ARGB, 2, 12);
+        lightmap = new Lightmap(map, createLights(), 0.25);
+        if (lighting) {
+            renderer.setShading(shading, lightmap);
+        }
+        if (USE_VECTOR_DDA) {
+            renderer.setPacketCaster(PacketCaster.loadVector(SCREEN_WIDTH));
+            if (renderer.getPacketCaster() == null) {
+                System.err.println("jdk.incubator.vector not available, using the scalar DDA");
+            }
+        }
+        dynamicResolution = new DynamicResolution(DynamicResolution.DEFAULT_SCALES, FRAME_BUDGET_MS, 20);
+        inputHandler = new InputHandler(player, map);
+        if (USE_RENDER_THREAD) {
+            renderThread = new RenderThread(renderer, frameStats, dynamicResolution);
+            renderThread.setAdaptive(adaptiveResolution);
+            renderThread.start();
+        }
 
         // Set up the scene and event handlers
         StackPane root = new StackPane(canvas);
         Scene scene = new Scene(root, SCREEN_WIDTH, SCREEN_HEIGHT);
 
-        scene.setOnKeyPressed(e -> activeKeys.add(e.getCode()));
+        scene.setOnKeyPressed(e -> {
+            activeKeys.add(e.getCode());
+
+            // Toggle between the framebuffer and Canvas renderers with F2.
+            // The Canvas path draws on the FX thread, so the render thread
+            // stops first and only resumes once the mode is back.
+            if (e.getCode() == KeyCode.F2) {
+                if (renderer.getMode() == RenderMode.CANVAS) {
+                    renderer.setMode(RenderMode.FRAMEBUFFER);
+                    if (renderThread != null) {
+                        renderThread.start();
+                    }
+                } else {
+                    if (renderThread != null) {
+                        renderThread.stop();
+                    }
+                    renderer.setMode(RenderMode.CANVAS);
+                }
+            }
+
+            // Toggle adaptive resolution with F3; off means full resolution
+            if (e.getCode() == KeyCode.F3) {
+                adaptiveResolution = !adaptiveResolution;
+                if (renderThread != null) {
+                    renderThread.setAdaptive(adaptiveResolution);
+                } else {
+                    dynamicResolution.reset();
+                    renderer.setResolutionStep(0);
+                }
+            }
+
+            // F4 shows the frame timing overlay, F5 saves the timings and starts over
+            if (e.getCode() == KeyCode.F4) {
+                showStats = !showStats;
+            }
+            if (e.getCode() == KeyCode.F5) {
+                dumpStats();
+            }
+
+            // E opens or closes a door just ahead, X knocks down the wall
+            // there. Edits publish a new map snapshot; frames already being
+            // drawn finish with the old one.
+            if (e.getCode() == KeyCode.E) {
+                doors.toggle(cellAheadX(), cellAheadY());
+            }
+            if (e.getCode() == KeyCode.X) {
+                destroyWallAhead();
+            }
+
+            // F6 switches baked lighting and fog on and off. The render
+            // thread owns the Renderer, so it pauses for the change.
+            if (e.getCode() == KeyCode.F6) {
+                lighting = !lighting;
+                boolean restart = renderThread != null && renderer.getMode() == RenderMode.FRAMEBUFFER;
+                if (restart) {
+                    renderThread.stop();
+                }
+                renderer.setShading(lighting ? shading : null, lighting ? lightmap : null);
+                if (restart) {
+                    renderThread.start();
+                }
+            }
+        });
         scene.setOnKeyReleased(e -> activeKeys.remove(e.getCode()));
 
         // Main game loop
@@ -60,11 +215,51 @@ public class RaycastingGame extends Application {
                 double deltaTime = (now - lastUpdate) / 1_000_000_000.0;
                 lastUpdate = now;
 
-                // Update game state
-                inputHandler.handleInput(activeKeys, deltaTime);
+                long frameStart = System.nanoTime();
+
+                // Update game state in fixed steps, however long the frame took
+                accumulator += Math.min(deltaTime, MAX_FRAME_TIME);
+                while (accumulator >= SIMULATION_STEP) {
+                    player.savePreviousState();
+                    inputHandler.handleInput(activeKeys, SIMULATION_STEP);
+                    doors.update(SIMULATION_STEP, player);
+                    accumulator -= SIMULATION_STEP;
+                }
+                frameStats.add(FrameStage.INPUT, System.nanoTime() - frameStart);
+                double interpolation = accumulator / SIMULATION_STEP;
+
+                if (renderThread != null && renderer.getMode() == RenderMode.FRAMEBUFFER) {
+                    // Hand over this pulse's camera and show the newest finished
+                    // frame; the render thread times and closes its own frames
+                    renderThread.submit(player.snapshot(interpolation));
+                    FrameBuffer frame = renderThread.takeLatest();
+                    if (frame != null) {
+                        renderer.present(frame);
+                        if (showStats) {
+                            drawStatsOverlay(frame.width, frame.height);
+                        }
+                    }
+                    return;
+                }
+
+                // Render the game part way into the next step; an unchanged
+                // frame is left on the canvas as it is
+                renderer.setInterpolation(interpolation);
+                if (!renderer.render()) {
+                    return;
+                }
+                long frameNanos = System.nanoTime() - frameStart;
+                frameStats.add(FrameStage.FRAME, frameNanos);
+                frameStats.endFrame();
+
+                if (showStats) {
+                    drawStatsOverlay(renderer.getScreenWidth(), renderer.getScreenHeight());
+                }
 
-                // Render the game
-                renderer.render();
+                // Time spent here, not the vsync-paced delta, shows the headroom
+                if (adaptiveResolution && renderThread == null) {
+                    renderer.setResolutionStep(dynamicResolution.frameRendered(frameNanos));
+                }
             }
         };
 
@@ -78,278 +273,108 @@ public class RaycastingGame extends Application {
         gameLoop.start();
     }
 
-    public static void main(String[] args) {
-        launch(args);
-    }
-}
-
-class Player {
-    // Position
-    private double x;
-    private double y;
-
-    // Direction vector
-    private double dirX;
-    private double dirY;
-
-    // Camera plane - perpendicular to direction
-    private double planeX;
-    private double planeY;
-
-    // Movement properties
-    private double moveSpeed = 3.0; // units per second
-    private double rotSpeed = 2.0; // radians per second
-
-    public Player(double x, double y, double dirX, double dirY) {
-        this.x = x;
-        this.y = y;
-        this.dirX = dirX;
-        this.dirY = dirY;
-
-        // Initialize the camera plane perpendicular to direction vector
-        // This determines FOV - the ratio between planeLength and dirLength
-        this.planeX = 0.0;
-        this.planeY = 0.90; // FOV of approximately 66 degrees
-    }
-
-    public void move(double dx, double dy, Map map) {
-        // Check for collision before moving
-        if (!map.isWall((int)(x + dx), (int)y)) {
-            x += dx;
+    // Last frame and whole-run percentiles per stage, top left
+    private void drawStatsOverlay(int width, int height) {
+        gc.setFill(Color.rgb(0, 0, 0, 0.6));
+        gc.fillRect(8, 8, 360, 40 + 18 * (FrameStage.values().length + 2));
+        gc.setFill(Color.WHITE);
+        gc.setFont(Font.font("Monospaced", 14));
+
+        int y = 28;
+        gc.fillText(String.format(Locale.ROOT, "%-10s %7s %7s %7s", "ms", "last", "p50", "p99"), 16, y);
+        for (FrameStage stage : FrameStage.values()) {
+            Histogram histogram = frameStats.getHistogram(stage);
+            y += 18;
+            gc.fillText(String.format(Locale.ROOT, "%-10s %7.2f %7.2f %7.2f",
+                    stage.name().toLowerCase(Locale.ROOT), frameStats.getLastNanos(stage) / 1e6,
+                    histogram.getPercentile(0.50) / 1e6, histogram.getPercentile(0.99) / 1e6), 16, y);
         }
 
-        if (!map.isWall((int)x, (int)(y + dy))) {
-            y += dy;
-        }
+        long rays = frameStats.getLastRays();
+        y += 26;
+        gc.fillText(String.format(Locale.ROOT, "DDA steps  %d (%.1f/ray, %.1f avg)", frameStats.getLastSteps(),
+                rays == 0 ? 0 : (double)frameStats.getLastSteps() / rays, frameStats.getAverageStepsPerRay()), 16, y);
+        y += 18;
+        gc.fillText(String.format(Locale.ROOT, "Resolution %dx%d", width, height), 16, y);
     }
 
-    public void rotate(double angle) {
-        // Rotate direction vector and camera plane
-        double oldDirX = dirX;
-        dirX = dirX * Math.cos(angle) - dirY * Math.sin(angle);
-        dirY = oldDirX * Math.sin(angle) + dirY * Math.cos(angle);
-
-        double oldPlaneX = planeX;
-        planeX = planeX * Math.cos(angle) - planeY * Math.sin(angle);
-        planeY = oldPlaneX * Math.sin(angle) + planeY * Math.cos(angle);
+    private void dumpStats() {
+        Path path = Paths.get("raycaster-stats-" + System.currentTimeMillis() + ".csv");
+        try {
+            frameStats.writeCsv(path);
+            frameStats.reset();
+            System.out.println("Frame timings written to " + path.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Could not write " + path + ": " + e.getMessage());
+        }
     }
 
-    // Movement methods
-    public void moveForward(double deltaTime, Map map) {
-        double dx = dirX * moveSpeed * deltaTime;
-        double dy = dirY * moveSpeed * deltaTime;
-        move(dx, dy, map);
+    // The cell a step in front of the player
+    private int cellAheadX() {
+        return (int)Math.floor(player.getX() + Math.cos(player.getAngle()));
     }
 
-    public void moveBackward(double deltaTime, Map map) {
-        double dx = -dirX * moveSpeed * deltaTime;
-        double dy = -dirY * moveSpeed * deltaTime;
-        move(dx, dy, map);
+    private int cellAheadY() {
+        return (int)Math.floor(player.getY() + Math.sin(player.getAngle()));
     }
 
-    public void strafeLeft(double deltaTime, Map map) {
-        // Move perpendicular to direction vector
-        double dx = -dirY * moveSpeed * deltaTime;
-        double dy = dirX * moveSpeed * deltaTime;
-        move(dx, dy, map);
+    // Any wall inside the map can go, except a door
+    private void destroyWallAhead() {
+        int x = cellAheadX();
+        int y = cellAheadY();
+        if (x >= 0 && x < map.getWidth() && y >= 0 && y < map.getHeight()
+                && map.isWall(x, y) && !doors.isDoor(x, y)) {
+            map.setTile(x, y, 0);
+        }
     }
 
-    public void strafeRight(double deltaTime, Map map) {
-        // Move perpendicular to direction vector
-        double dx = dirY * moveSpeed * deltaTime;
-        double dy = -dirX * moveSpeed * deltaTime;
-        move(dx, dy, map);
+    // A few pickups and an enemy to look at
+    private static SpriteList createSprites(Map map) {
+        SpriteList sprites = new SpriteList(map.getWidth(), map.getHeight());
+        sprites.add(5.5, 2.5, 0);
+        sprites.add(7.5, 4.5, 0);
+        sprites.add(4.5, 6.5, 0);
+        sprites.add(7.5, 7.5, 1);
+        sprites.add(3.5, 4.5, 2);
+        return sprites;
     }
 
-    public void turnLeft(double deltaTime) {
-        rotate(-rotSpeed * deltaTime);
+    // A warm light on each side of the door, and a dim one in a corner
+    private static List<PointLight> createLights() {
+        return List.of(
+                new PointLight(2.5, 2.5, 6, 0.9),
+                new PointLight(7.0, 6.5, 5, 0.8),
+                new PointLight(8.5, 1.5, 3, 0.5));
     }
 
-    public void turnRight(double deltaTime) {
-        rotate(rotSpeed * deltaTime);
+    private static boolean booleanProperty(String name, boolean defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : parseStrictBoolean("-D" + name, value);
     }
 
-    // Getters
-    public double getX() { return x; }
-    public double getY() { return y; }
-    public double getDirX() { return dirX; }
-    public double getDirY() { return dirY; }
-    public double getPlaneX() { return planeX; }
-    public double getPlaneY() { return planeY; }
-
-    // Setters
-    public void setMoveSpeed(double moveSpeed) { this.moveSpeed = moveSpeed; }
-    public void setRotSpeed(double rotSpeed) { this.rotSpeed = rotSpeed; }
-}
-
-class Map {
-    // Simple map layout - 1 represents a wall, 0 is empty space
-    private final int[][] mapData = {
-            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 0, 0, 0, 0, 0, 0, 0, 0, 1},
-            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1}
-    };
-
-    public int getWidth() {
-        return mapData[0].length;
-    }
-
-    public int getHeight() {
-        return mapData.length;
-    }
-
-    public boolean isWall(int x, int y) {
-        // Check bounds
-        if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
-            return true; // Treat out of bounds as walls
+    // Boolean.parseBoolean and getBoolean read every typo as false, which
+    // would quietly switch a feature off. name is how the user set value,
+    // for the error message.
+    static boolean parseStrictBoolean(String name, String value) {
+        if (value.equals("true")) {
+            return true;
         }
-
-        return mapData[y][x] == 1;
-    }
-
-    public int getMapValue(int x, int y) {
-        if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
-            return 0;
+        if (value.equals("false")) {
+            return false;
         }
-        return mapData[y][x];
+        throw new IllegalArgumentException(name + " must be true or false: " + value);
     }
-}
-
-class Renderer {
-    private final GraphicsContext gc;
-    private final Map map;
-    private final Player player;
-    private final int screenWidth;
-    private final int screenHeight;
-
-    // Colors
-    private final Color ceilingColor = Color.DARKBLUE;
-    private final Color floorColor = Color.DARKGRAY;
-    private final Color[] wallColors = {
-            Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW
-    };
 
-    public Renderer(GraphicsContext gc, Map map, Player player, int screenWidth, int screenHeight) {
-        this.gc = gc;
-        this.map = map;
-        this.player = player;
-        this.screenWidth = screenWidth;
-        this.screenHeight = screenHeight;
+    @Override
+    public void stop() {
+        if (renderThread != null) {
+            renderThread.stop();
+        }
+        renderer.shutdown();
     }
 
-    public void render() {
-        // Clear the screen
-        gc.setFill(Color.BLACK);
-        gc.fillRect(0, 0, screenWidth, screenHeight);
-
-        // Draw ceiling
-        gc.setFill(ceilingColor);
-        gc.fillRect(0, 0, screenWidth, screenHeight / 2);
-
-        // Draw floor
-        gc.setFill(floorColor);
-        gc.fillRect(0, screenHeight / 2, screenWidth, screenHeight / 2);
-
-        // Cast rays for each column of the screen
-        for (int x = 0; x < screenWidth; x++) {
-            // Calculate ray position and direction
-            double cameraX = 2 * x / (double)screenWidth - 1; // x-coordinate in camera space
-            double rayDirX = player.getDirX() + player.getPlaneX() * cameraX;
-            double rayDirY = player.getDirY() + player.getPlaneY() * cameraX;
-
-            // Which box of the map we're in
-            int mapX = (int)player.getX();
-            int mapY = (int)player.getY();
-
-            // Length of ray from current position to next x or y-side
-            double sideDistX;
-            double sideDistY;
-
-            // Length of ray from one x or y-side to next x or y-side
-            double deltaDistX = Math.abs(1 / rayDirX);
-            double deltaDistY = Math.abs(1 / rayDirY);
-
-            // What direction to step in x or y direction (either +1 or -1)
-            int stepX;
-            int stepY;
-
-            // Variables for hit detection
-            boolean hit = false;
-            int side = 0; // was a NS or a EW wall hit?
-
-            // Calculate step and initial sideDist
-            if (rayDirX < 0) {
-                stepX = -1;
-                sideDistX = (player.getX() - mapX) * deltaDistX;
-            } else {
-                stepX = 1;
-                sideDistX = (mapX + 1.0 - player.getX()) * deltaDistX;
-            }
-
-            if (rayDirY < 0) {
-                stepY = -1;
-                sideDistY = (player.getY() - mapY) * deltaDistY;
-            } else {
-                stepY = 1;
-                sideDistY = (mapY + 1.0 - player.getY()) * deltaDistY;
-            }
-
-            // Perform DDA (Digital Differential Analysis)
-            while (!hit) {
-                // Jump to next map square, either in x-direction, or in y-direction
-                if (sideDistX < sideDistY) {
-                    sideDistX += deltaDistX;
-                    mapX += stepX;
-                    side = 0;
-                } else {
-                    sideDistY += deltaDistY;
-                    mapY += stepY;
-                    side = 1;
-                }
-
-                // Check if ray has hit a wall
-                if (map.isWall(mapX, mapY)) {
-                    hit = true;
-                }
-            }
-
-            // Calculate distance projected on camera direction
-            double perpWallDist;
-            if (side == 0) {
-                perpWallDist = (mapX - player.getX() + (1 - stepX) / 2) / rayDirX;
-            } else {
-                perpWallDist = (mapY - player.getY() + (1 - stepY) / 2) / rayDirY;
-            }
-
-            // Calculate height of line to draw on screen
-            int lineHeight = (int)(screenHeight / perpWallDist);
-
-            // Calculate lowest and highest pixel to fill in current stripe
-            int drawStart = -lineHeight / 2 + screenHeight / 2;
-            if (drawStart < 0) drawStart = 0;
-            int drawEnd = lineHeight / 2 + screenHeight / 2;
-            if (drawEnd >= screenHeight) drawEnd = screenHeight - 1;
-
-            // Choose wall color based on map value
-            Color color = wallColors[map.getMapValue(mapX, mapY) % wallColors.length];
-
-            // Make color darker for y-sides
-            if (side == 1) {
-                color = color.darker();
-            }
-
-            // Draw the vertical line
-            gc.setStroke(color);
-            gc.setLineWidth(1);
-            gc.strokeLine(x, drawStart, x, drawEnd);
-        }
+    public static void main(String[] args) {
+        launch(args);
     }
 }
 
@@ -357,9 +382,10 @@ class InputHandler {
     private final Player player;
     private final Map map;
 
-    public InputHandler(Player player) {
+    // map is the one the Renderer draws, so the player collides with what is on screen
+    public InputHandler(Player player, Map map) {
         this.player = player;
-        this.map = new Map(); // Assuming we want to use the same map instance
+        this.map = map;
     }
 
     public void handleInput(Set<KeyCode> activeKeys, double deltaTime) {
@@ -0,0 +1,9 @@
+package com.example.raycastinggame;
+
+/**
+ * How the Renderer gets a frame onto the Canvas
+ */
+enum RenderMode {
+    CANVAS,      // One strokeLine per column plus fillRect clears
+    FRAMEBUFFER  // Rasterize into an int[] and upload it in one setPixels call
+}
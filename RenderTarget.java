@@ -0,0 +1,144 @@
+package com.example.raycastinggame;
+
+import javafx.scene.image.WritableImage;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Everything the Renderer sizes by its internal resolution: the column ray
+ * tables, per-column ray results and layer stacks, wall spans and the
+ * framebuffer. With dynamic resolution the Renderer keeps one target per
+ * step and switches between them, so a resolution change allocates
+ * nothing.
+ */
+final class RenderTarget {
+    // Side of the blocks transposeToRows copies: 32 x 32 ints is 4 KB each way
+    private static final int TRANSPOSE_BLOCK = 32;
+
+    // See-through faces a column keeps in front of its wall; a ray passes
+    // any more without drawing them
+    static final int MAX_LAYERS = 4;
+
+    final int width;
+    final int height;
+
+    // Camera-space x of each column, and the per-frame ray tables
+    final double[] cameraXs;
+    final double[] rayDirXs;
+    final double[] rayDirYs;
+    final double[] deltaDistXs;
+    final double[] deltaDistYs;
+
+    // Direction and plane the ray tables were last built for; a camera that
+    // only moved reuses them
+    double raysDirX = Double.NaN;
+    double raysDirY = Double.NaN;
+    double raysPlaneX = Double.NaN;
+    double raysPlaneY = Double.NaN;
+
+    // Per-column ray results and the rows each wall stripe covers
+    final double[] perpWallDists;
+    final int[] hitSides;
+    final int[] hitValues;
+    final double[] wallXs;
+    final int[] hitIndexes;   // padded map index of each hit, from a PacketCaster
+    final boolean[] clearOfCorners;
+    final int[] drawStarts;
+    final int[] drawEnds;
+
+    // Each column's see-through faces, nearest first, at column * MAX_LAYERS:
+    // distance, side, tile value and padded map index, like the ray results
+    // for its wall
+    final int[] layerCounts;
+    final double[] layerDists;
+    final int[] layerSides;
+    final int[] layerValues;
+    final int[] layerIndexes;
+    // Of each column's faces, how many, farthest first, are still to blend
+    final int[] layersLeft;
+
+    // Shaded flat ceiling and floor colour of each row
+    final int[] flatRows;
+
+    // Per-row floor distance, mip shift, texture offset and fog, for
+    // floor casting down columns
+    final double[] rowDistances;
+    final int[] rowShifts;
+    final int[] rowBases;
+    final int[] rowFogs;
+
+    // Framebuffer in the Renderer's layout, the row-major copy a
+    // column-major frame is transposed into, and the image it is uploaded to
+    // on the FX thread
+    final int[] pixels;
+    private int[] rows;
+    WritableImage image;
+
+    // Worker tasks over this target's columns and rows; null when single-threaded
+    List<Callable<Void>> strips;
+    List<Callable<Void>> rowBands;
+    List<Callable<Void>> layerStrips;
+    List<Callable<Void>> spriteStrips;
+
+    RenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        this.cameraXs = new double[width];
+        for (int x = 0; x < width; x++) {
+            cameraXs[x] = 2 * x / (double)width - 1; // x-coordinate in camera space
+        }
+        this.rayDirXs = new double[width];
+        this.rayDirYs = new double[width];
+        this.deltaDistXs = new double[width];
+        this.deltaDistYs = new double[width];
+
+        this.perpWallDists = new double[width];
+        this.hitSides = new int[width];
+        this.hitValues = new int[width];
+        this.wallXs = new double[width];
+        this.hitIndexes = new int[width];
+        this.clearOfCorners = new boolean[width];
+        this.drawStarts = new int[width];
+        this.drawEnds = new int[width];
+        this.layerCounts = new int[width];
+        this.layerDists = new double[width * MAX_LAYERS];
+        this.layerSides = new int[width * MAX_LAYERS];
+        this.layerValues = new int[width * MAX_LAYERS];
+        this.layerIndexes = new int[width * MAX_LAYERS];
+        this.layersLeft = new int[width];
+        this.flatRows = new int[height];
+        this.rowDistances = new double[height];
+        this.rowShifts = new int[height];
+        this.rowBases = new int[height];
+        this.rowFogs = new int[height];
+        this.pixels = new int[width * height];
+    }
+
+    /**
+     * Copy a column-major frame of this size into a row-major buffer, which
+     * is allocated on first use and reused. The copy goes in square blocks
+     * small enough that the rows written and columns read all stay in L1.
+     */
+    int[] transposeToRows(int[] columns) {
+        if (rows == null) {
+            rows = new int[width * height];
+        }
+        final int[] rows = this.rows;
+        // Blocks go along each band of rows, so the rows being written stay
+        // cached from one block to the next
+        for (int blockY = 0; blockY < height; blockY += TRANSPOSE_BLOCK) {
+            int endY = Math.min(height, blockY + TRANSPOSE_BLOCK);
+            for (int blockX = 0; blockX < width; blockX += TRANSPOSE_BLOCK) {
+                int endX = Math.min(width, blockX + TRANSPOSE_BLOCK);
+                for (int x = blockX; x < endX; x++) {
+                    int from = x * height;
+                    for (int y = blockY; y < endY; y++) {
+                        rows[y * width + x] = columns[from + y];
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+}
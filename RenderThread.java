@@ -0,0 +1,149 @@
+package com.example.raycastinggame;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the Renderer on its own thread so a slow frame never holds up input
+ * or the UI. Each pulse the FX thread hands over an immutable CameraPose
+ * with submit() and uploads the newest finished frame from takeLatest().
+ *
+ * Frames cycle through three preallocated buffers: one being drawn, one
+ * finished and waiting, one on screen. Publishing or taking a frame is a
+ * single atomic exchange of the waiting buffer's index, so neither thread
+ * ever waits for the other. Poses that arrive while a frame is being drawn
+ * replace each other; only the latest is rendered, and not even that when
+ * the last frame already shows it.
+ *
+ * While running, the render thread owns the Renderer: set it up first,
+ * and only call present(FrameBuffer) on it from the FX thread.
+ */
+final class RenderThread {
+    // Set alongside the waiting index while that frame hasn't been taken
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Renderer renderer;
+    private final FrameStats stats;
+    private final DynamicResolution dynamicResolution;
+    private final FrameBuffer[] buffers = new FrameBuffer[3];
+    private final AtomicInteger waiting = new AtomicInteger(1);
+    private final AtomicReference<CameraPose> pending = new AtomicReference<>();
+
+    // Buffer each side holds; the third index is in waiting
+    private int back = 0;
+    private int front = 2;
+
+    private volatile boolean running;
+    private volatile boolean adaptive;
+    private boolean wasAdaptive;
+    private Thread thread;
+
+    /**
+     * @param stats             renderer stats to close a frame on after each render, or null
+     * @param dynamicResolution scaler fed with render times when adaptive
+     */
+    RenderThread(Renderer renderer, FrameStats stats, DynamicResolution dynamicResolution) {
+        this.renderer = renderer;
+        this.stats = stats;
+        this.dynamicResolution = dynamicResolution;
+        int capacity = renderer.getOutputWidth() * renderer.getOutputHeight();
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new FrameBuffer(capacity);
+        }
+    }
+
+    void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "raycast-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop after the frame in progress, and wait for it. */
+    void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /** Ask for a frame of the given camera, replacing any not yet started. */
+    void submit(CameraPose pose) {
+        pending.set(pose);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * The newest frame finished since the last call, or null if there is
+     * none. It stays untouched until the next call returns a new frame.
+     */
+    FrameBuffer takeLatest() {
+        if ((waiting.get() & FRESH) == 0) {
+            return null;
+        }
+        front = waiting.getAndSet(front) & INDEX;
+        return buffers[front];
+    }
+
+    /** Scale resolution to render time; off returns to full resolution. */
+    void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    private void run() {
+        while (running) {
+            CameraPose pose = pending.getAndSet(null);
+            if (pose == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            // Switching scaling off goes straight back to full resolution
+            boolean adaptive = this.adaptive;
+            if (adaptive != wasAdaptive) {
+                dynamicResolution.reset();
+                renderer.setResolutionStep(0);
+                wasAdaptive = adaptive;
+            }
+
+            // Nothing moved: the frame on screen is still right
+            if (renderer.isFrameCurrent(pose)) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                renderer.renderFrame(pose, buffers[back]);
+            } catch (CancellationException e) {
+                // Interrupted mid-frame: drop the unfinished frame and stop
+                return;
+            }
+            long frameNanos = System.nanoTime() - start;
+
+            // Publish, taking back whichever buffer was waiting
+            back = waiting.getAndSet(back | FRESH) & INDEX;
+
+            if (stats != null) {
+                stats.add(FrameStage.FRAME, frameNanos);
+                stats.endFrame();
+            }
+
+            if (adaptive) {
+                renderer.setResolutionStep(dynamicResolution.frameRendered(frameNanos));
+            }
+        }
+    }
+}
@@ -0,0 +1,1743 @@
+package com.example.raycastinggame;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class Renderer {
+    private final GraphicsContext gc;
+    private final Map map;
+    private final Player player;
+    private final int outputWidth;
+    private final int outputHeight;
+    private RenderMode mode = RenderMode.FRAMEBUFFER;
+
+    // Colors
+    private final Color ceilingColor = Color.DARKBLUE;
+    private final Color floorColor = Color.DARKGRAY;
+    private final Color[] wallColors = {
+            Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW
+    };
+    private final Color[] wallColorsDark;
+    private final Color[] glassColors;
+    private final Color[] glassColorsDark;
+
+    // Same colors packed as ARGB for the framebuffer path
+    private final int ceilingArgb;
+    private final int floorArgb;
+    private final int[] wallArgb;
+    private final int[] wallArgbDark;
+
+    // Camera captured at the start of each frame so workers never read a
+    // moving Player, interpolated between simulation steps
+    private double interpolation = 1.0;
+    private double posX;
+    private double posY;
+    private double dirX;
+    private double dirY;
+    private double planeX;
+    private double planeY;
+
+    // Column-parallel workers; null when rendering on the calling thread
+    private ExecutorService workers;
+    private int threadCount = 1;
+    private boolean rasterizeStrips;
+
+    // The map's tiles as this frame reads them, whatever is edited meanwhile
+    private MapSnapshot frameTiles;
+
+    // Empty-space skipping over the map's occupancy pyramid, and the distance
+    // beyond which rays give up and the column shows only ceiling and floor
+    private boolean emptySpaceSkipping = true;
+    private double maxViewDistance = Double.POSITIVE_INFINITY;
+    private MapOccupancy frameOccupancy;
+
+    // hitSides value for a ray that found no wall within maxViewDistance
+    static final int NO_HIT = -1;
+
+    // Trace only the ends of each run of columns that hit one wall face and
+    // fill in the rest; the results match tracing every column. The slack,
+    // in cells, keeps that reasoning clear of rounding in the DDA.
+    private static final double SPAN_SLACK = 1e-7;
+    private boolean spanCoherence = true;
+
+    // Glass covers this many 256ths of what lies behind it. A grate is
+    // GRATE_BARS bars to a cell, each GRATE_BAR_WIDTH of its share wide.
+    private static final int GLASS_OPACITY = 96;
+    private static final int GRATE_BARS = 4;
+    private static final double GRATE_BAR_WIDTH = 0.3;
+
+    // Optional engine that traces several rays at once, e.g. VectorDda; the
+    // scalar loop runs when it is null or can't handle this frame's map
+    private PacketCaster packetCaster;
+    private boolean usePackets;
+
+    // Internal resolution steps, largest first, each with its own pooled
+    // buffers. Step 0 is always the output size and the Canvas path uses it.
+    private RenderTarget[] targets;
+    private int resolutionStep;
+    private RenderTarget target;
+
+    // The current target's size and arrays, copied into fields by useTarget
+    // so the per-pixel code reads them directly
+    private int screenWidth;
+    private int screenHeight;
+
+    // Camera-space x of each column, fixed for the resolution, and the
+    // per-frame ray tables derived from it
+    private double[] cameraXs;
+    private double[] rayDirXs;
+    private double[] rayDirYs;
+    private double[] deltaDistXs;
+    private double[] deltaDistYs;
+
+    // Billboard sprites, drawn after walls and floors against the z-buffer,
+    // blending the glass behind each stripe first
+    private SpriteList sprites;
+    private TextureAtlas spriteAtlas;
+    private final SpritePass spritePass = new SpritePass();
+    private final DepthLayers spriteLayers = this::blendLayersBehind;
+
+    // How far each moving door has slid, taken once a frame like the tiles
+    private Doors doors;
+    private Doors.Openings frameOpenings = Doors.Openings.NONE;
+
+    // Stage timings and DDA step counts; null when not instrumented
+    private FrameStats stats;
+
+    // Versions the last frame was drawn from, and whether any setting that
+    // changes the picture was touched since
+    private long drawnPlayerVersion = CameraPose.IN_BETWEEN;
+    private long drawnMapVersion;
+    private long drawnSpriteVersion;
+    private long drawnDoorVersion;
+    private boolean settingsChanged = true;
+
+    // Per-column ray results, filled by castColumns and read by the draw
+    // stage. perpWallDists doubles as the z-buffer sprites are clipped against.
+    private double[] perpWallDists;
+    private int[] hitSides;
+    private int[] hitValues;
+    private double[] wallXs;
+    private int[] hitIndexes;
+    // Whether each traced ray kept SPAN_SLACK from every grid corner and
+    // passed no see-through tile or door, so castSpan can fill in from it
+    private boolean[] clearOfCorners;
+
+    // See-through faces each ray passed before its wall, from RenderTarget,
+    // and whether any column this frame has one
+    private int[] layerCounts;
+    private double[] layerDists;
+    private int[] layerSides;
+    private int[] layerValues;
+    private int[] layerIndexes;
+    private int[] layersLeft;
+    private boolean frameHasLayers;
+
+    // Wall textures for the framebuffer path; null draws flat colours
+    private TextureAtlas textureAtlas;
+
+    // Lighting and fog through ShadeTable lookups. Without a shade table
+    // walls keep half-bright y-sides; without a lightmap every face is lit
+    // fully. The Canvas path shades walls and glass only, from colours made
+    // on first use.
+    private ShadeTable shading;
+    private Lightmap lightmap;
+    private Color[] canvasShades;
+    private Color[] canvasGlassShades;
+
+    // Which cells the camera's cell can see, brought up to each frame's
+    // snapshot; sprites out of sight are dropped before they are projected
+    private PotentiallyVisibleSets visibleSets;
+
+    // Textured floor and ceiling (needs an atlas), drawn around the wall
+    // stripes using the rows each column's wall covers
+    private boolean floorCasting = true;
+    private boolean castFloors;
+    private boolean castFloorStrips;
+    private int floorTexture = 3;
+    private int ceilingTexture = 2;
+    private int[] drawStarts;
+    private int[] drawEnds;
+
+    // Software framebuffer, reused every frame. Column-major keeps every
+    // wall, floor and ceiling stripe one contiguous run, and is transposed
+    // to rows once, when the frame is presented.
+    private int[] pixels;
+    private boolean columnMajor;
+
+    // Off-screen renderer: framebuffer only, no Canvas to present to
+    public Renderer(Map map, Player player, int screenWidth, int screenHeight) {
+        this(null, map, player, screenWidth, screenHeight);
+    }
+
+    public Renderer(GraphicsContext gc, Map map, Player player, int screenWidth, int screenHeight) {
+        this.gc = gc;
+        this.map = map;
+        this.player = player;
+        this.outputWidth = screenWidth;
+        this.outputHeight = screenHeight;
+
+        this.ceilingArgb = toArgb(ceilingColor);
+        this.floorArgb = toArgb(floorColor);
+        this.wallArgb = new int[wallColors.length];
+        this.wallArgbDark = new int[wallColors.length];
+        this.wallColorsDark = new Color[wallColors.length];
+        this.glassColors = new Color[wallColors.length];
+        this.glassColorsDark = new Color[wallColors.length];
+        for (int i = 0; i < wallColors.length; i++) {
+            wallColorsDark[i] = wallColors[i].darker();
+            wallArgb[i] = toArgb(wallColors[i]);
+            wallArgbDark[i] = toArgb(wallColorsDark[i]);
+            glassColors[i] = wallColors[i].deriveColor(0, 1, 1, GLASS_OPACITY / 256.0);
+            glassColorsDark[i] = wallColorsDark[i].deriveColor(0, 1, 1, GLASS_OPACITY / 256.0);
+        }
+
+        this.targets = new RenderTarget[] { new RenderTarget(screenWidth, screenHeight) };
+        useTarget(targets[0]);
+    }
+
+    /**
+     * Draw the player's camera unless the last frame already shows it.
+     * Returns false when the frame was skipped and the canvas left alone.
+     */
+    public boolean render() {
+        CameraPose pose = player.snapshot(interpolation);
+        if (isFrameCurrent(pose)) {
+            return false;
+        }
+        renderFrame(pose, null);
+
+        long start = clock();
+        if (mode == RenderMode.CANVAS) {
+            drawColumnsToCanvas();
+        } else {
+            present();
+        }
+        record(FrameStage.PRESENT, start);
+        return true;
+    }
+
+    /**
+     * Whether the last frame rendered already shows this pose: a settled
+     * camera at the same Player version, no tile or sprite changes since,
+     * the same resolution step and no renderer setting changed.
+     */
+    public boolean isFrameCurrent(CameraPose pose) {
+        int step = mode == RenderMode.FRAMEBUFFER ? resolutionStep : 0;
+        return !settingsChanged
+                && pose.version != CameraPose.IN_BETWEEN
+                && pose.version == drawnPlayerVersion
+                && map.getVersion() == drawnMapVersion
+                && (sprites == null || sprites.getVersion() == drawnSpriteVersion)
+                && (doors == null || doors.getOpenings().version == drawnDoorVersion)
+                && targets[step] == target;
+    }
+
+    /**
+     * Cast every column and, in framebuffer mode, rasterize it into
+     * getPixels(). Touches no JavaFX state, so it also runs headless.
+     */
+    public void renderFrame() {
+        renderFrame(player.snapshot(interpolation), null);
+    }
+
+    /**
+     * Render the given camera, into frame's buffer when frame is not null.
+     * This is the render thread's entry point: it never reads the Player,
+     * and frame records the size it was drawn at. Throws
+     * CancellationException, with the interrupt flag set again, when the
+     * thread is interrupted while workers draw; the buffer then holds an
+     * unfinished frame that must not be shown.
+     */
+    public void renderFrame(CameraPose pose, FrameBuffer frame) {
+        boolean rasterize = mode == RenderMode.FRAMEBUFFER;
+
+        // Resolution changes land between frames, never inside one
+        int step = rasterize ? resolutionStep : 0;
+        if (targets[step] != target) {
+            useTarget(targets[step]);
+        }
+        pixels = frame != null ? frame.pixels : target.pixels;
+
+        // What this frame shows, read before drawing so an edit made
+        // meanwhile still leads to a redraw
+        settingsChanged = false;
+        drawnPlayerVersion = pose.version;
+        frameTiles = map.snapshot();
+        drawnMapVersion = frameTiles.getVersion();
+        drawnSpriteVersion = sprites == null ? 0 : sprites.getVersion();
+        frameOpenings = doors == null ? Doors.Openings.NONE : doors.getOpenings();
+        drawnDoorVersion = frameOpenings.version;
+
+        long start = clock();
+        captureCamera(pose);
+        record(FrameStage.RAY_SETUP, start);
+        castFloors = rasterize && floorCasting && textureAtlas != null;
+        if (rasterize && shading != null && !castFloors) {
+            shadeFlatRows();
+        }
+        frameHasLayers = false;
+
+        if (workers == null) {
+            // Cast rays for each column of the screen
+            start = clock();
+            castColumns(0, screenWidth);
+            record(FrameStage.DDA, start);
+            if (rasterize) {
+                start = clock();
+                rasterizeColumns(0, screenWidth);
+                record(FrameStage.RASTERIZE, start);
+            }
+            if (castFloors) {
+                start = clock();
+                if (columnMajor) {
+                    setUpFloorRows();
+                    castFloorColumns(0, screenWidth);
+                } else {
+                    castFloorRows(0, screenHeight);
+                }
+                record(FrameStage.FLOORS, start);
+            }
+            // Sprites blend the glass behind them as they go, and the rest
+            // goes on after
+            start = clock();
+            if (prepareSprites()) {
+                drawSprites(0, screenWidth);
+            }
+            record(FrameStage.SPRITES, start);
+            if (rasterize && frameHasLayers) {
+                start = clock();
+                blendLayers(0, screenWidth);
+                record(FrameStage.LAYERS, start);
+            }
+        } else {
+            // Each strip casts and rasterizes its own columns, then floor and
+            // ceiling fill around the walls in bands of rows. Column-major
+            // strips cast their own floor columns straight after.
+            rasterizeStrips = rasterize;
+            castFloorStrips = castFloors && columnMajor;
+            if (castFloorStrips) {
+                start = clock();
+                setUpFloorRows();
+                record(FrameStage.FLOORS, start);
+            }
+            runAll(target.strips);
+            if (castFloors && !columnMajor) {
+                start = clock();
+                runAll(target.rowBands);
+                record(FrameStage.FLOORS, start);
+            }
+            start = clock();
+            if (prepareSprites()) {
+                runAll(target.spriteStrips);
+            }
+            record(FrameStage.SPRITES, start);
+            if (rasterize && frameHasLayers) {
+                start = clock();
+                runAll(target.layerStrips);
+                record(FrameStage.LAYERS, start);
+            }
+        }
+
+        if (frame != null) {
+            frame.width = screenWidth;
+            frame.height = screenHeight;
+            frame.step = step;
+            frame.columnMajor = columnMajor;
+        }
+    }
+
+    // Stage timing helpers; just a null check when stats are off
+    private long clock() {
+        return stats == null ? 0 : System.nanoTime();
+    }
+
+    private void record(FrameStage stage, long start) {
+        if (stats != null) {
+            stats.add(stage, System.nanoTime() - start);
+        }
+    }
+
+    private void useTarget(RenderTarget target) {
+        this.target = target;
+        screenWidth = target.width;
+        screenHeight = target.height;
+        cameraXs = target.cameraXs;
+        rayDirXs = target.rayDirXs;
+        rayDirYs = target.rayDirYs;
+        deltaDistXs = target.deltaDistXs;
+        deltaDistYs = target.deltaDistYs;
+        perpWallDists = target.perpWallDists;
+        hitSides = target.hitSides;
+        hitValues = target.hitValues;
+        wallXs = target.wallXs;
+        hitIndexes = target.hitIndexes;
+        clearOfCorners = target.clearOfCorners;
+        layerCounts = target.layerCounts;
+        layerDists = target.layerDists;
+        layerSides = target.layerSides;
+        layerValues = target.layerValues;
+        layerIndexes = target.layerIndexes;
+        layersLeft = target.layersLeft;
+        drawStarts = target.drawStarts;
+        drawEnds = target.drawEnds;
+        pixels = target.pixels;
+    }
+
+    /**
+     * Internal resolution steps as fractions of the output size, largest
+     * first; a 1.0 step is added in front when missing. Buffers for every
+     * step are allocated here, so later step changes allocate nothing.
+     */
+    public void setResolutionScales(double... scales) {
+        List<RenderTarget> steps = new ArrayList<>();
+        steps.add(targets[0]);
+        double previous = 1.0;
+        for (double scale : scales) {
+            if (!(scale > 0 && scale <= previous)) {
+                throw new IllegalArgumentException("Scales must be descending within (0, 1]: "
+                        + Arrays.toString(scales));
+            }
+            if (scale == 1.0) {
+                continue;
+            }
+            previous = scale;
+
+            int width = Math.max(1, (int)Math.round(outputWidth * scale));
+            int height = Math.max(2, (int)Math.round(outputHeight * scale));
+            RenderTarget step = new RenderTarget(width, height);
+            if (workers != null) {
+                buildTasks(step);
+            }
+            steps.add(step);
+        }
+
+        targets = steps.toArray(new RenderTarget[0]);
+        resolutionStep = Math.min(resolutionStep, targets.length - 1);
+    }
+
+    /** Render at the given step from the next frame on; 0 is full resolution. */
+    public void setResolutionStep(int resolutionStep) {
+        if (resolutionStep < 0 || resolutionStep >= targets.length) {
+            throw new IllegalArgumentException("No resolution step " + resolutionStep);
+        }
+        this.resolutionStep = resolutionStep;
+    }
+
+    // Cull and sort this frame's sprites; false when there is nothing to draw
+    private boolean prepareSprites() {
+        if (mode != RenderMode.FRAMEBUFFER || sprites == null || spriteAtlas == null) {
+            return false;
+        }
+
+        // Nothing beyond the farthest wall shows in any column
+        double farDistance = 0;
+        for (double perpWallDist : perpWallDists) {
+            farDistance = Math.max(farDistance, perpWallDist);
+        }
+
+        spritePass.prepare(sprites, posX, posY, dirX, dirY, planeX, planeY,
+                farDistance, screenWidth, screenHeight, shading, lightmap, visibleSets);
+        return spritePass.getVisibleCount() > 0;
+    }
+
+    void drawSprites(int from, int to) {
+        spritePass.draw(from, to, pixels, perpWallDists, spriteAtlas, screenWidth, screenHeight, shading, columnMajor,
+                frameHasLayers ? spriteLayers : null);
+    }
+
+    private void captureCamera(CameraPose pose) {
+        posX = pose.x;
+        posY = pose.y;
+        dirX = pose.dirX;
+        dirY = pose.dirY;
+        planeX = pose.planeX;
+        planeY = pose.planeY;
+
+        // Built on first use; later frames just pick it up
+        frameOccupancy = emptySpaceSkipping ? frameTiles.getOccupancy() : null;
+        usePackets = packetCaster != null && packetCaster.prepare(frameTiles);
+        if (shading != null && lightmap != null) {
+            lightmap.refresh(frameTiles);
+        }
+        if (visibleSets != null) {
+            visibleSets = visibleSets.update(frameTiles);
+        }
+
+        setUpRays();
+    }
+
+    // One tight pass over the columns: ray direction and the distance
+    // between grid lines along it, read by castColumns
+    private void setUpRays() {
+        final double[] cameraXs = this.cameraXs;
+        final double dirX = this.dirX;
+        final double dirY = this.dirY;
+        final double planeX = this.planeX;
+        final double planeY = this.planeY;
+
+        // Ray directions don't depend on position, so pure translation keeps them
+        RenderTarget target = this.target;
+        if (dirX == target.raysDirX && dirY == target.raysDirY
+                && planeX == target.raysPlaneX && planeY == target.raysPlaneY) {
+            return;
+        }
+        target.raysDirX = dirX;
+        target.raysDirY = dirY;
+        target.raysPlaneX = planeX;
+        target.raysPlaneY = planeY;
+
+        for (int x = 0; x < cameraXs.length; x++) {
+            double rayDirX = dirX + planeX * cameraXs[x];
+            double rayDirY = dirY + planeY * cameraXs[x];
+            rayDirXs[x] = rayDirX;
+            rayDirYs[x] = rayDirY;
+            deltaDistXs[x] = Math.abs(1 / rayDirX);
+            deltaDistYs[x] = Math.abs(1 / rayDirY);
+        }
+    }
+
+    // An interrupt cancels the strips not yet done, so the frame is left
+    // part old and part new: it is never counted as drawn, and the caller
+    // gets a CancellationException instead of a frame to show
+    private void runAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> done : workers.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            settingsChanged = true;
+            throw new CancellationException("Interrupted while rendering a frame");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Raycast worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Use the given number of threads for ray casting and rasterization.
+     * One thread renders on the caller, as before.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1: " + threadCount);
+        }
+        shutdown();
+        this.threadCount = threadCount;
+        if (threadCount == 1) {
+            return;
+        }
+
+        workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "raycast-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (RenderTarget target : targets) {
+            buildTasks(target);
+        }
+    }
+
+    // Worker tasks over one target's columns and rows
+    private void buildTasks(RenderTarget target) {
+        // Several strips per thread keeps cores busy when some columns hit
+        // far walls, and rounding to 16 columns (one 64-byte line of ints)
+        // stops neighbouring strips sharing framebuffer cache lines. With a
+        // packet engine strips also round to its packet width, so no packet
+        // reaches into the next strip's columns.
+        int width = target.width;
+        int height = target.height;
+        int alignment = 16;
+        while (packetCaster != null && alignment % packetCaster.packetWidth() != 0) {
+            alignment += 16;
+        }
+        int stripWidth = (width + threadCount * 4 - 1) / (threadCount * 4);
+        stripWidth = Math.max(alignment, (stripWidth + alignment - 1) / alignment * alignment);
+
+        List<Callable<Void>> strips = new ArrayList<>();
+        List<Callable<Void>> layerStrips = new ArrayList<>();
+        List<Callable<Void>> spriteStrips = new ArrayList<>();
+        for (int from = 0; from < width; from += stripWidth) {
+            int stripFrom = from;
+            int stripTo = Math.min(width, from + stripWidth);
+            strips.add(() -> {
+                long start = clock();
+                castColumns(stripFrom, stripTo);
+                record(FrameStage.DDA, start);
+                if (rasterizeStrips) {
+                    start = clock();
+                    rasterizeColumns(stripFrom, stripTo);
+                    record(FrameStage.RASTERIZE, start);
+                }
+                if (castFloorStrips) {
+                    start = clock();
+                    castFloorColumns(stripFrom, stripTo);
+                    record(FrameStage.FLOORS, start);
+                }
+                return null;
+            });
+            layerStrips.add(() -> {
+                blendLayers(stripFrom, stripTo);
+                return null;
+            });
+            spriteStrips.add(() -> {
+                drawSprites(stripFrom, stripTo);
+                return null;
+            });
+        }
+
+        int bandHeight = Math.max(1, (height + threadCount * 4 - 1) / (threadCount * 4));
+        List<Callable<Void>> rowBands = new ArrayList<>();
+        for (int from = 0; from < height; from += bandHeight) {
+            int bandFrom = from;
+            int bandTo = Math.min(height, from + bandHeight);
+            rowBands.add(() -> {
+                castFloorRows(bandFrom, bandTo);
+                return null;
+            });
+        }
+
+        target.strips = strips;
+        target.rowBands = rowBands;
+        target.layerStrips = layerStrips;
+        target.spriteStrips = spriteStrips;
+    }
+
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+            for (RenderTarget target : targets) {
+                target.strips = null;
+                target.rowBands = null;
+                target.layerStrips = null;
+                target.spriteStrips = null;
+            }
+        }
+        threadCount = 1;
+    }
+
+    // Run the DDA for columns [from, to) and record what each ray hit.
+    // The camera must be inside the map.
+    void castColumns(int from, int to) {
+        if (usePackets) {
+            castPackets(from, to);
+            return;
+        }
+
+        long steps = 0;
+        if (spanCoherence && to - from > 2 && offGridLines(posX) && offGridLines(posY)) {
+            steps += traceColumns(from, from + 1) + traceColumns(to - 1, to);
+            steps += castSpan(from, to - 1);
+        } else {
+            steps += traceColumns(from, to);
+        }
+
+        if (stats != null) {
+            stats.addDda(steps, to - from);
+        }
+    }
+
+    // Columns strictly between a and b, whose rays are already traced. When
+    // both hit the same face and nothing can come between, every ray in
+    // between hits that face too and recordHit finishes it exactly as the
+    // DDA would; otherwise trace the middle column and split there.
+    private long castSpan(int a, int b) {
+        if (b - a < 2) {
+            return 0;
+        }
+        int side = hitSides[a];
+        int mapIndex = hitIndexes[a];
+        if (side != NO_HIT && side == hitSides[b] && mapIndex == hitIndexes[b]
+                && clearOfCorners[a] && clearOfCorners[b] && spanClear(a, b)) {
+            int stride = frameTiles.getStride();
+            int mapX = mapIndex % stride - 1;
+            int mapY = mapIndex / stride - 1;
+            for (int x = a + 1; x < b; x++) {
+                recordHit(x, side, mapX, mapY, mapIndex);
+            }
+            return 0;
+        }
+        int middle = (a + b) >>> 1;
+        long steps = traceColumns(middle, middle + 1);
+        return steps + castSpan(a, middle) + castSpan(middle, b);
+    }
+
+    // Whether every ray between columns a and b must hit the face they both
+    // hit. Their rays, which passed no grid corner, cross every cell within
+    // SPAN_SLACK of them, and all of those were open. The triangle between
+    // the two rays and the face is narrower than a cell across the face, so
+    // a wall cell can only reach into it by touching one of the rays. That
+    // leaves the face's ends, which both hits must stay clear of, and view
+    // distance, which the farther hit must be well inside.
+    private boolean spanClear(int a, int b) {
+        double distA = perpWallDists[a];
+        double distB = perpWallDists[b];
+        if (Math.max(distA, distB) * (1 + SPAN_SLACK) >= maxViewDistance) {
+            return false;
+        }
+        int mapIndex = hitIndexes[a];
+        int stride = frameTiles.getStride();
+        double alongA;
+        double alongB;
+        if (hitSides[a] == 0) {
+            double faceStart = mapIndex / stride - 1;
+            alongA = posY + distA * rayDirYs[a] - faceStart;
+            alongB = posY + distB * rayDirYs[b] - faceStart;
+        } else {
+            double faceStart = mapIndex % stride - 1;
+            alongA = posX + distA * rayDirXs[a] - faceStart;
+            alongB = posX + distB * rayDirXs[b] - faceStart;
+        }
+        return Math.min(alongA, alongB) > SPAN_SLACK && Math.max(alongA, alongB) < 1 - SPAN_SLACK;
+    }
+
+    // Whether a camera coordinate is more than SPAN_SLACK from a grid line
+    private static boolean offGridLines(double coordinate) {
+        double fraction = coordinate - Math.floor(coordinate);
+        return fraction > SPAN_SLACK && fraction < 1 - SPAN_SLACK;
+    }
+
+    // Cast the rays of columns [from, to) and record what each hit; returns
+    // the DDA steps taken
+    private long traceColumns(int from, int to) {
+        final MapSnapshot tiles = frameTiles;
+        final int stride = tiles.getStride();
+        final MapOccupancy occupancy = frameOccupancy;
+        final double maxViewDistance = this.maxViewDistance;
+
+        final double posX = this.posX;
+        final double posY = this.posY;
+        final double[] rayDirXs = this.rayDirXs;
+        final double[] rayDirYs = this.rayDirYs;
+        final double[] deltaDistXs = this.deltaDistXs;
+        final double[] deltaDistYs = this.deltaDistYs;
+        final int startMapX = (int)posX;
+        final int startMapY = (int)posY;
+        final int startIndex = tiles.index(startMapX, startMapY);
+        final boolean watchCorners = spanCoherence;
+        final int[] layerCounts = this.layerCounts;
+        final double[] layerDists = this.layerDists;
+        final int[] layerSides = this.layerSides;
+        final int[] layerValues = this.layerValues;
+        final int[] layerIndexes = this.layerIndexes;
+        long steps = 0;
+
+        for (int x = from; x < to; x++) {
+            // Ray direction from the per-frame setup pass
+            double rayDirX = rayDirXs[x];
+            double rayDirY = rayDirYs[x];
+
+            // Which box of the map we're in
+            int mapX = startMapX;
+            int mapY = startMapY;
+            int mapIndex = startIndex;
+
+            // Length of ray from current position to next x or y-side
+            double sideDistX;
+            double sideDistY;
+
+            // Length of ray from one x or y-side to next x or y-side
+            double deltaDistX = deltaDistXs[x];
+            double deltaDistY = deltaDistYs[x];
+
+            // Ray length over which it moves SPAN_SLACK along each axis: a
+            // crossing that close to the other axis's lines is near a corner
+            double cornerSlackX = SPAN_SLACK * deltaDistX;
+            double cornerSlackY = SPAN_SLACK * deltaDistY;
+
+            // What direction to step in x or y direction (either +1 or -1)
+            int stepX;
+            int stepY;
+
+            // Variables for hit detection
+            boolean hit = false;
+            int side = 0; // was a NS or a EW wall hit?
+            boolean nearCorner = false;
+
+            // See-through tiles passed: the one the ray is in, if any, whether
+            // it went through one or a door at all, and the faces it keeps
+            byte passing = 0;
+            boolean seeThrough = false;
+            int layers = 0;
+
+            // Calculate step and initial sideDist
+            if (rayDirX < 0) {
+                stepX = -1;
+                sideDistX = (posX - mapX) * deltaDistX;
+            } else {
+                stepX = 1;
+                sideDistX = (mapX + 1.0 - posX) * deltaDistX;
+            }
+
+            if (rayDirY < 0) {
+                stepY = -1;
+                sideDistY = (posY - mapY) * deltaDistY;
+            } else {
+                stepY = 1;
+                sideDistY = (mapY + 1.0 - posY) * deltaDistY;
+            }
+
+            // Stepping a row in the flat grid moves by the stride
+            int stepIndexY = stepY * stride;
+
+            // Boundaries crossed so far. sideDist is always first + steps * delta
+            // rather than a running sum, so a jump across an empty block lands
+            // on exactly the values per-cell stepping would have reached
+            double firstSideDistX = sideDistX;
+            double firstSideDistY = sideDistY;
+            int stepsX = 0;
+            int stepsY = 0;
+
+            // Perform DDA (Digital Differential Analysis)
+            while (!hit) {
+                steps++;
+
+                // Cross a whole block in one jump when it holds no walls
+                int blockShift = occupancy == null ? 0 : occupancy.emptyBlockShift(mapX + 1, mapY + 1);
+                if (blockShift != 0) {
+                    // Steps on each axis until the ray leaves the block, in padded cells
+                    int cellX = mapX + 1;
+                    int cellY = mapY + 1;
+                    int blockX = (cellX >> blockShift) << blockShift;
+                    int blockY = (cellY >> blockShift) << blockShift;
+                    int blockSize = 1 << blockShift;
+                    int cellsX = stepX > 0 ? blockX + blockSize - cellX : cellX - blockX + 1;
+                    int cellsY = stepY > 0 ? blockY + blockSize - cellY : cellY - blockY + 1;
+                    int lastStepX = stepsX + cellsX - 1;
+                    int lastStepY = stepsY + cellsY - 1;
+                    double exitX = sideDist(firstSideDistX, deltaDistX, lastStepX);
+                    double exitY = sideDist(firstSideDistY, deltaDistY, lastStepY);
+
+                    int newStepsX;
+                    int newStepsY;
+                    double exitDist;
+                    if (exitX < exitY) {
+                        exitDist = exitX;
+                        newStepsX = lastStepX + 1;
+                        newStepsY = firstStepAfter(firstSideDistY, deltaDistY, Math.abs(rayDirY), exitX, stepsY, lastStepY);
+                        side = 0;
+                    } else {
+                        exitDist = exitY;
+                        newStepsY = lastStepY + 1;
+                        newStepsX = firstStepNotBefore(firstSideDistX, deltaDistX, Math.abs(rayDirX), exitY, stepsX, lastStepX);
+                        side = 1;
+                    }
+                    if (exitDist > maxViewDistance) {
+                        break;
+                    }
+                    if (watchCorners) {
+                        double across = side == 0 ? posY + exitDist * rayDirY : posX + exitDist * rayDirX;
+                        nearCorner |= !offGridLines(across);
+                    }
+
+                    mapX += (newStepsX - stepsX) * stepX;
+                    mapY += (newStepsY - stepsY) * stepY;
+                    mapIndex += (newStepsX - stepsX) * stepX + (newStepsY - stepsY) * stepIndexY;
+                    stepsX = newStepsX;
+                    stepsY = newStepsY;
+                    sideDistX = sideDist(firstSideDistX, deltaDistX, stepsX);
+                    sideDistY = sideDist(firstSideDistY, deltaDistY, stepsY);
+                } else if (sideDistX < sideDistY) {
+                    // Jump to next map square, either in x-direction, or in y-direction
+                    if (sideDistX > maxViewDistance) {
+                        break;
+                    }
+                    if (watchCorners) {
+                        nearCorner |= sideDistY - sideDistX < cornerSlackY
+                                || sideDistX - (sideDistY - deltaDistY) < cornerSlackY;
+                    }
+                    stepsX++;
+                    sideDistX = sideDist(firstSideDistX, deltaDistX, stepsX);
+                    mapX += stepX;
+                    mapIndex += stepX;
+                    side = 0;
+                } else {
+                    if (sideDistY > maxViewDistance) {
+                        break;
+                    }
+                    if (watchCorners) {
+                        nearCorner |= sideDistX - sideDistY < cornerSlackX
+                                || sideDistY - (sideDistX - deltaDistX) < cornerSlackX;
+                    }
+                    stepsY++;
+                    sideDistY = sideDist(firstSideDistY, deltaDistY, stepsY);
+                    mapY += stepY;
+                    mapIndex += stepIndexY;
+                    side = 1;
+                }
+
+                // Check if ray has hit a wall; the border ring stops every ray.
+                // Passing is never a wall, so open cells cost one compare.
+                byte tile = tiles.tileAt(mapIndex);
+                if (tile == passing) {
+                    continue;
+                }
+                if (tile == Map.WALL) {
+                    hit = true;
+                } else if (tile == Map.DOOR) {
+                    // Stopped by the part of the slab still shut. A span
+                    // can't be interpolated across a door, and the cells
+                    // after it are looked at afresh.
+                    seeThrough = true;
+                    passing = 0;
+                    hit = doorAlong(side, mapX, mapY, rayDirX, rayDirY) >= frameOpenings.at(mapIndex);
+                } else {
+                    // Only the face the ray enters a see-through tile by
+                    // shows, however many cells of it the ray then crosses
+                    passing = tile;
+                    if (Map.isSeeThrough(tile)) {
+                        seeThrough = true;
+                        double faceDist = faceDistance(side, mapX, mapY, rayDirX, rayDirY);
+                        if (tile == Map.GRATE) {
+                            // A bar stops the ray like a wall; a gap lets it by
+                            double along = side == 0 ? posY + faceDist * rayDirY : posX + faceDist * rayDirX;
+                            double bar = along * GRATE_BARS;
+                            hit = bar - Math.floor(bar) < GRATE_BAR_WIDTH;
+                        } else if (layers < RenderTarget.MAX_LAYERS) {
+                            int slot = x * RenderTarget.MAX_LAYERS + layers++;
+                            layerDists[slot] = faceDist;
+                            layerSides[slot] = side;
+                            layerValues[slot] = tile & 0xFF;
+                            layerIndexes[slot] = mapIndex;
+                        }
+                    }
+                }
+            }
+
+            if (hit) {
+                recordHit(x, side, mapX, mapY, mapIndex);
+            } else {
+                recordMiss(x);
+            }
+            if (layers > 0) {
+                layerCounts[x] = layers;
+                layersLeft[x] = layers;
+                frameHasLayers = true;
+            }
+            clearOfCorners[x] = !nearCorner && !seeThrough;
+        }
+        return steps;
+    }
+
+    // castColumns through the packet engine: it finds the wall cell and side
+    // for each column, and the results are finished exactly as above. Columns
+    // it hands back at a see-through tile or a door go through traceColumns
+    // instead.
+    private void castPackets(int from, int to) {
+        final int stride = frameTiles.getStride();
+        long steps = packetCaster.trace(posX, posY, frameTiles.index((int)posX, (int)posY),
+                rayDirXs, rayDirYs, deltaDistXs, deltaDistYs, maxViewDistance, from, to, hitIndexes, hitSides);
+
+        for (int x = from; x < to; x++) {
+            int side = hitSides[x];
+            if (side == PacketCaster.HANDED_OFF) {
+                steps += traceColumns(x, x + 1);
+            } else if (side == NO_HIT) {
+                recordMiss(x);
+            } else {
+                int mapIndex = hitIndexes[x];
+                recordHit(x, side, mapIndex % stride - 1, mapIndex / stride - 1, mapIndex);
+            }
+        }
+
+        if (stats != null) {
+            stats.addDda(steps, to - from);
+        }
+    }
+
+    // Nothing within view distance
+    private void recordMiss(int x) {
+        perpWallDists[x] = Double.POSITIVE_INFINITY;
+        hitSides[x] = NO_HIT;
+        hitValues[x] = 0;
+        layerCounts[x] = 0;
+        layersLeft[x] = 0;
+    }
+
+    // Column x's ray stopped in cell (mapX, mapY) on the given side
+    private void recordHit(int x, int side, int mapX, int mapY, int mapIndex) {
+        double rayDirX = rayDirXs[x];
+        double rayDirY = rayDirYs[x];
+        int tile = frameTiles.tileAt(mapIndex) & 0xFF;
+        double perpWallDist;
+        double wallX;
+        if (tile == Map.DOOR) {
+            // The slab across the middle of the cell, its texture sliding
+            // with it as it opens
+            perpWallDist = side == 0 ? (mapX + 0.5 - posX) / rayDirX : (mapY + 0.5 - posY) / rayDirY;
+            wallX = doorAlong(side, mapX, mapY, rayDirX, rayDirY) - frameOpenings.at(mapIndex);
+        } else {
+            perpWallDist = faceDistance(side, mapX, mapY, rayDirX, rayDirY);
+
+            // Where along the wall face the ray hit, mirrored so every face
+            // reads its texture left to right
+            wallX = side == 0 ? posY + perpWallDist * rayDirY : posX + perpWallDist * rayDirX;
+            wallX -= Math.floor(wallX);
+            if ((side == 0 && rayDirX > 0) || (side == 1 && rayDirY < 0)) {
+                wallX = 1 - wallX;
+            }
+        }
+
+        perpWallDists[x] = perpWallDist;
+        hitSides[x] = side;
+        hitValues[x] = tile;
+        hitIndexes[x] = mapIndex;
+        wallXs[x] = wallX;
+        layerCounts[x] = 0;
+        layersLeft[x] = 0;
+    }
+
+    // Where a ray entering door cell (mapX, mapY) by the given side crosses
+    // the slab across the middle of the cell, parallel to that side: from 0
+    // to 1 along it, or -1 when the ray leaves the cell first
+    private double doorAlong(int side, int mapX, int mapY, double rayDirX, double rayDirY) {
+        double along = side == 0
+                ? posY + (mapX + 0.5 - posX) / rayDirX * rayDirY - mapY
+                : posX + (mapY + 0.5 - posY) / rayDirY * rayDirX - mapX;
+        return along >= 0 && along < 1 ? along : -1;
+    }
+
+    // Distance, projected on the camera direction, to the face of cell
+    // (mapX, mapY) on the given side that a ray in this direction enters by
+    private double faceDistance(int side, int mapX, int mapY, double rayDirX, double rayDirY) {
+        if (side == 0) {
+            return (mapX - posX + (1 - (rayDirX < 0 ? -1 : 1)) / 2) / rayDirX;
+        }
+        return (mapY - posY + (1 - (rayDirY < 0 ? -1 : 1)) / 2) / rayDirY;
+    }
+
+    // Smallest step count in [low, high] whose boundary lies beyond dist, i.e.
+    // the first step per-cell DDA takes after the step at dist. high qualifies.
+    // perCell is 1 / delta; the estimate only needs to be close, the loops
+    // settle it with the same arithmetic the per-cell path uses.
+    private static int firstStepAfter(double first, double delta, double perCell, double dist, int low, int high) {
+        int steps = clamp((int)((dist - first) * perCell), low, high);
+        while (steps > low && dist < sideDist(first, delta, steps - 1)) {
+            steps--;
+        }
+        while (!(dist < sideDist(first, delta, steps))) {
+            steps++;
+        }
+        return steps;
+    }
+
+    // Smallest step count in [low, high] whose boundary per-cell DDA would not
+    // cross before the step at dist. high qualifies.
+    private static int firstStepNotBefore(double first, double delta, double perCell, double dist, int low, int high) {
+        int steps = clamp((int)((dist - first) * perCell), low, high);
+        while (steps > low && !(sideDist(first, delta, steps - 1) < dist)) {
+            steps--;
+        }
+        while (sideDist(first, delta, steps) < dist) {
+            steps++;
+        }
+        return steps;
+    }
+
+    // Distance along the ray to the boundary after the given number of steps.
+    // Zero steps is the first boundary itself, which keeps an axis-parallel
+    // ray (delta infinite) from turning 0 * delta into NaN.
+    private static double sideDist(double first, double delta, int steps) {
+        return steps == 0 ? first : first + steps * delta;
+    }
+
+    private static int clamp(int value, int low, int high) {
+        return Math.max(low, Math.min(high, value));
+    }
+
+    // The original Canvas path: clear, two fills and one stroked line per column
+    private void drawColumnsToCanvas() {
+        // Clear the screen
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, screenWidth, screenHeight);
+
+        // Draw ceiling
+        gc.setFill(ceilingColor);
+        gc.fillRect(0, 0, screenWidth, screenHeight / 2);
+
+        // Draw floor
+        gc.setFill(floorColor);
+        gc.fillRect(0, screenHeight / 2, screenWidth, screenHeight / 2);
+
+        gc.setLineWidth(1);
+        for (int x = 0; x < screenWidth; x++) {
+            if (hitSides[x] == NO_HIT) {
+                continue;
+            }
+
+            // Calculate height of line to draw on screen
+            int lineHeight = (int)(screenHeight / perpWallDists[x]);
+
+            // Calculate lowest and highest pixel to fill in current stripe
+            int drawStart = -lineHeight / 2 + screenHeight / 2;
+            if (drawStart < 0) drawStart = 0;
+            int drawEnd = lineHeight / 2 + screenHeight / 2;
+            if (drawEnd >= screenHeight) drawEnd = screenHeight - 1;
+
+            // Choose wall color based on map value, darker for y-sides or
+            // in the column's light and fog
+            int colorIndex = hitValues[x] % wallColors.length;
+            Color color;
+            if (shading != null) {
+                color = canvasShade(colorIndex, columnShade(x));
+            } else {
+                color = hitSides[x] == 1 ? wallColorsDark[colorIndex] : wallColors[colorIndex];
+            }
+
+            // Draw the vertical line
+            gc.setStroke(color);
+            gc.strokeLine(x, drawStart, x, drawEnd);
+        }
+
+        // See-through faces over the walls, farthest first
+        for (int x = 0; x < screenWidth; x++) {
+            int first = x * RenderTarget.MAX_LAYERS;
+            for (int slot = first + layerCounts[x] - 1; slot >= first; slot--) {
+                int lineHeight = (int)(screenHeight / layerDists[slot]);
+                int drawStart = -lineHeight / 2 + screenHeight / 2;
+                if (drawStart < 0) drawStart = 0;
+                int drawEnd = lineHeight / 2 + screenHeight / 2;
+                if (drawEnd >= screenHeight) drawEnd = screenHeight - 1;
+
+                int colorIndex = layerValues[slot] % wallColors.length;
+                if (shading != null) {
+                    gc.setStroke(canvasGlassShade(colorIndex, layerShade(x, slot)));
+                } else {
+                    gc.setStroke(layerSides[slot] == 1 ? glassColorsDark[colorIndex] : glassColors[colorIndex]);
+                }
+                gc.strokeLine(x, drawStart, x, drawEnd);
+            }
+        }
+    }
+
+    // Light and fog of column x's wall as a ShadeTable shade
+    private int columnShade(int x) {
+        int side = hitSides[x];
+        int light;
+        if (lightmap != null) {
+            light = lightmap.faceLevel(hitIndexes[x], Lightmap.face(side, rayDirXs[x], rayDirYs[x]));
+        } else {
+            light = side == 1 ? ShadeTable.HALF_LIGHT : ShadeTable.FULL_LIGHT;
+        }
+        return ShadeTable.shade(light, shading.fogLevel(perpWallDists[x]));
+    }
+
+    // Light and fog of a see-through face in column x's layer slot
+    private int layerShade(int x, int slot) {
+        int side = layerSides[slot];
+        int light;
+        if (lightmap != null) {
+            light = lightmap.faceLevel(layerIndexes[slot], Lightmap.face(side, rayDirXs[x], rayDirYs[x]));
+        } else {
+            light = side == 1 ? ShadeTable.HALF_LIGHT : ShadeTable.FULL_LIGHT;
+        }
+        return ShadeTable.shade(light, shading.fogLevel(layerDists[slot]));
+    }
+
+    private Color canvasShade(int colorIndex, int shade) {
+        int shades = ShadeTable.LIGHT_LEVELS * ShadeTable.FOG_LEVELS;
+        if (canvasShades == null) {
+            canvasShades = new Color[wallColors.length * shades];
+        }
+        int slot = colorIndex * shades + shade;
+        Color color = canvasShades[slot];
+        if (color == null) {
+            int argb = shading.apply(shade, wallArgb[colorIndex]);
+            color = Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+            canvasShades[slot] = color;
+        }
+        return color;
+    }
+
+    // canvasShade at glass opacity
+    private Color canvasGlassShade(int colorIndex, int shade) {
+        int shades = ShadeTable.LIGHT_LEVELS * ShadeTable.FOG_LEVELS;
+        if (canvasGlassShades == null) {
+            canvasGlassShades = new Color[wallColors.length * shades];
+        }
+        int slot = colorIndex * shades + shade;
+        Color color = canvasGlassShades[slot];
+        if (color == null) {
+            color = canvasShade(colorIndex, shade).deriveColor(0, 1, 1, GLASS_OPACITY / 256.0);
+            canvasGlassShades[slot] = color;
+        }
+        return color;
+    }
+
+    // Flat ceiling and floor colour of every row in its fog, and the floor
+    // in the ambient light, for rasterizeColumns without floor casting
+    private void shadeFlatRows() {
+        final int[] flatRows = target.flatRows;
+        final int height = screenHeight;
+        int floorLight = lightmap != null ? lightmap.ambientLevel(Lightmap.FLOOR) : ShadeTable.FULL_LIGHT;
+        int ceilingLight = lightmap != null ? floorLight : ShadeTable.FULL_LIGHT;
+        for (int y = 0; y < height; y++) {
+            boolean floor = y >= height / 2;
+            double p = floor ? y + 0.5 - height / 2 : height / 2 - (y + 0.5);
+            int fog = shading.fogLevel(0.5 * height / p);
+            flatRows[y] = floor
+                    ? shading.apply(ShadeTable.shade(floorLight, fog), floorArgb)
+                    : shading.apply(ShadeTable.shade(ceilingLight, fog), ceilingArgb);
+        }
+    }
+
+    // Write ceiling, wall and floor for columns [from, to) into the framebuffer
+    void rasterizeColumns(int from, int to) {
+        final int[] pixels = this.pixels;
+        final int width = screenWidth;
+        final int height = screenHeight;
+        final TextureAtlas atlas = textureAtlas;
+        final boolean castFloors = this.castFloors;
+        final ShadeTable shading = this.shading;
+        final int[] flatRows = target.flatRows;
+        final int rowStep = columnMajor ? 1 : width;
+
+        for (int x = from; x < to; x++) {
+            // A camera exactly on a grid line can see a wall at distance -0.0
+            double perpWallDist = perpWallDists[x];
+            int lineHeight = perpWallDist > 0 ? (int)(height / perpWallDist) : height;
+
+            int drawStart = -lineHeight / 2 + height / 2;
+            if (drawStart < 0) drawStart = 0;
+            int drawEnd = lineHeight / 2 + height / 2;
+            if (drawEnd >= height) drawEnd = height - 1;
+
+            if (hitSides[x] == NO_HIT) {
+                // No wall: the ceiling loop runs to the horizon, the floor loop the rest
+                drawStart = height / 2;
+                drawEnd = drawStart - 1;
+            }
+
+            drawStarts[x] = drawStart;
+            drawEnds[x] = drawEnd;
+
+            // drawStart never passes the horizon and drawEnd never falls short
+            // of it, so everything above the wall is ceiling and below is floor.
+            // With floor casting on, the floor pass fills those parts instead.
+            int i = columnMajor ? x * height : x;
+            if (castFloors) {
+                i += drawStart * rowStep;
+            } else if (shading != null) {
+                for (int y = 0; y < drawStart; y++, i += rowStep) {
+                    pixels[i] = flatRows[y];
+                }
+            } else {
+                for (int y = 0; y < drawStart; y++, i += rowStep) {
+                    pixels[i] = ceilingArgb;
+                }
+            }
+
+            if (atlas != null && hitSides[x] != NO_HIT) {
+                i = drawTexturedStripe(atlas, x, i, lineHeight, drawStart, drawEnd);
+            } else if (hitSides[x] != NO_HIT) {
+                int colorIndex = hitValues[x] % wallArgb.length;
+                int wall;
+                if (shading != null) {
+                    wall = shading.apply(columnShade(x), wallArgb[colorIndex]);
+                } else {
+                    wall = hitSides[x] == 1 ? wallArgbDark[colorIndex] : wallArgb[colorIndex];
+                }
+                for (int y = drawStart; y <= drawEnd; y++, i += rowStep) {
+                    pixels[i] = wall;
+                }
+            }
+
+            if (castFloors) {
+                continue;
+            }
+            if (shading != null) {
+                for (int y = drawEnd + 1; y < height; y++, i += rowStep) {
+                    pixels[i] = flatRows[y];
+                }
+            } else {
+                for (int y = drawEnd + 1; y < height; y++, i += rowStep) {
+                    pixels[i] = floorArgb;
+                }
+            }
+        }
+    }
+
+    /**
+     * Blend the see-through faces of columns [from, to) not blended yet
+     * over what is drawn behind them, farthest first, once walls, floors
+     * and sprites are down. A nearer face always covers every row of the
+     * ones behind it, so each column composites back to front in a single
+     * pass. Faces are glass: flat, GLASS_OPACITY over the pixels, lit and
+     * fogged like a wall face.
+     */
+    void blendLayers(int from, int to) {
+        for (int x = from; x < to; x++) {
+            blendLayersBehind(x, Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    // Blend column x's faces farther than depth that aren't blended yet.
+    // The sprite pass calls this before each sprite stripe, so a sprite
+    // behind glass is tinted by it and one in front draws over it.
+    private void blendLayersBehind(int x, double depth) {
+        final int[] pixels = this.pixels;
+        final int height = screenHeight;
+        final ShadeTable shading = this.shading;
+        final int rowStep = columnMajor ? 1 : screenWidth;
+
+        int first = x * RenderTarget.MAX_LAYERS;
+        int left = layersLeft[x];
+        for (; left > 0 && layerDists[first + left - 1] > depth; left--) {
+            int slot = first + left - 1;
+            double layerDist = layerDists[slot];
+            int lineHeight = layerDist > 0 ? (int)(height / layerDist) : height;
+            int drawStart = -lineHeight / 2 + height / 2;
+            if (drawStart < 0) drawStart = 0;
+            int drawEnd = lineHeight / 2 + height / 2;
+            if (drawEnd >= height) drawEnd = height - 1;
+
+            int colorIndex = layerValues[slot] % wallArgb.length;
+            int glass;
+            if (shading != null) {
+                glass = shading.apply(layerShade(x, slot), wallArgb[colorIndex]);
+            } else {
+                glass = layerSides[slot] == 1 ? wallArgbDark[colorIndex] : wallArgb[colorIndex];
+            }
+
+            // Red and blue blend side by side in one int, green alone;
+            // the glass's share of each is the same down the stripe
+            int glassRedBlue = (glass & 0xFF00FF) * GLASS_OPACITY;
+            int glassGreen = (glass & 0xFF00) * GLASS_OPACITY;
+            int clear = 256 - GLASS_OPACITY;
+            int i = (columnMajor ? x * height : x) + drawStart * rowStep;
+            for (int y = drawStart; y <= drawEnd; y++, i += rowStep) {
+                int under = pixels[i];
+                pixels[i] = 0xFF000000
+                        | ((glassRedBlue + (under & 0xFF00FF) * clear) >>> 8 & 0xFF00FF)
+                        | ((glassGreen + (under & 0xFF00) * clear) >>> 8 & 0xFF00);
+            }
+        }
+        layersLeft[x] = left;
+    }
+
+    /**
+     * Textured floor and ceiling for rows [from, to). Each row of the floor
+     * lies at one distance, so the world position of its leftmost pixel and
+     * the step between pixels are worked out once per row; texel
+     * coordinates then advance by addition. Only pixels outside the wall
+     * stripe of their column are written, as horizontal runs. With shading
+     * each row has one fog level, and a lightmap adds each cell's floor
+     * light, at half for the ceiling.
+     */
+    void castFloorRows(int from, int to) {
+        final int[] pixels = this.pixels;
+        final int[] texels = textureAtlas.getTexels();
+        final int[] drawStarts = this.drawStarts;
+        final int[] drawEnds = this.drawEnds;
+        final int width = screenWidth;
+        final int height = screenHeight;
+        final int sizeShift = textureAtlas.getSizeShift();
+        final int levels = textureAtlas.getLevels();
+        final ShadeTable shading = this.shading;
+        final Lightmap lightmap = this.lightmap;
+        final int[] tables = shading != null ? shading.getTables() : null;
+
+        // Rays through the left and right edges of the screen
+        final double rayDirX0 = dirX - planeX;
+        final double rayDirY0 = dirY - planeY;
+        final double rayDirX1 = dirX + planeX;
+        final double rayDirY1 = dirY + planeY;
+
+        // Camera height is half a wall, which puts the horizon mid-screen
+        final double posZ = 0.5 * height;
+
+        for (int y = from; y < to; y++) {
+            boolean floor = y >= height / 2;
+
+            // Distance to the row, sampled through the pixel centre so the rows
+            // next to the horizon stay finite
+            double p = floor ? y + 0.5 - height / 2 : height / 2 - (y + 0.5);
+            double rowDistance = posZ / p;
+
+            double stepX = rowDistance * (rayDirX1 - rayDirX0) / width;
+            double stepY = rowDistance * (rayDirY1 - rayDirY0) / width;
+            double floorX = posX + rowDistance * rayDirX0;
+            double floorY = posY + rowDistance * rayDirY0;
+
+            // Mip level from the texels one pixel step covers on this row
+            double footprint = Math.max(Math.abs(stepX), Math.abs(stepY)) * (1 << sizeShift);
+            int level = footprint < 1 ? 0 : Math.min(Math.getExponent(footprint), levels - 1);
+            int levelShift = sizeShift - level;
+            int levelSize = 1 << levelShift;
+            int mask = levelSize - 1;
+            int base = textureAtlas.offset(floor ? floorTexture : ceilingTexture, level);
+
+            int i = y * width;
+            if (shading != null) {
+                // One fog level per row; the light is looked up again only
+                // when the texel coordinates cross into another cell, and a
+                // texel repeated along the row is shaded once
+                int fog = shading.fogLevel(rowDistance);
+                int offset = ShadeTable.offset(ShadeTable.shade(floor ? ShadeTable.FULL_LIGHT : ShadeTable.HALF_LIGHT, fog));
+                int cellX = Integer.MIN_VALUE;
+                int cellY = Integer.MIN_VALUE;
+                int lastTexel = 0;
+                int shaded = tables[offset] | tables[offset + 256] | tables[offset + 512];
+                for (int x = 0; x < width; x++, i++) {
+                    if (floor ? y > drawEnds[x] : y < drawStarts[x]) {
+                        int texelX = (int)Math.floor(floorX * levelSize);
+                        int texelY = (int)Math.floor(floorY * levelSize);
+                        int texel = texels[base + ((texelX & mask) << levelShift) + (texelY & mask)];
+                        if (lightmap != null && (texelX >> levelShift != cellX || texelY >> levelShift != cellY)) {
+                            cellX = texelX >> levelShift;
+                            cellY = texelY >> levelShift;
+                            int light = lightmap.floorLevel(cellX, cellY);
+                            int cellOffset = ShadeTable.offset(ShadeTable.shade(floor ? light : light >> 1, fog));
+                            if (cellOffset != offset) {
+                                offset = cellOffset;
+                                shaded = tables[offset + ((texel >> 16) & 0xFF)]
+                                        | tables[offset + 256 + ((texel >> 8) & 0xFF)]
+                                        | tables[offset + 512 + (texel & 0xFF)];
+                                lastTexel = texel;
+                            }
+                        }
+                        if (texel != lastTexel) {
+                            lastTexel = texel;
+                            shaded = tables[offset + ((texel >> 16) & 0xFF)]
+                                    | tables[offset + 256 + ((texel >> 8) & 0xFF)]
+                                    | tables[offset + 512 + (texel & 0xFF)];
+                        }
+                        pixels[i] = shaded;
+                    }
+                    floorX += stepX;
+                    floorY += stepY;
+                }
+                continue;
+            }
+
+            for (int x = 0; x < width; x++, i++) {
+                if (floor ? y > drawEnds[x] : y < drawStarts[x]) {
+                    // Texel inside the cell; & mask also wraps negative coordinates
+                    int u = (int)Math.floor(floorX * levelSize) & mask;
+                    int v = (int)Math.floor(floorY * levelSize) & mask;
+                    int texel = texels[base + (u << levelShift) + v];
+                    pixels[i] = floor ? texel : ((texel >> 1) & 0x7F7F7F) | 0xFF000000;
+                }
+                floorX += stepX;
+                floorY += stepY;
+            }
+        }
+    }
+
+    // Per-row floor values for castFloorColumns: each row's distance, and
+    // the mip level, texture offset and fog castFloorRows would use for it
+    private void setUpFloorRows() {
+        final RenderTarget target = this.target;
+        final int height = screenHeight;
+        final int sizeShift = textureAtlas.getSizeShift();
+        final int levels = textureAtlas.getLevels();
+
+        // Distance between neighbouring columns' rays per unit of distance
+        final double spreadX = 2 * planeX / screenWidth;
+        final double spreadY = 2 * planeY / screenWidth;
+        final double posZ = 0.5 * height;
+
+        for (int y = 0; y < height; y++) {
+            boolean floor = y >= height / 2;
+            double p = floor ? y + 0.5 - height / 2 : height / 2 - (y + 0.5);
+            double rowDistance = posZ / p;
+
+            double footprint = Math.max(Math.abs(rowDistance * spreadX), Math.abs(rowDistance * spreadY))
+                    * (1 << sizeShift);
+            int level = footprint < 1 ? 0 : Math.min(Math.getExponent(footprint), levels - 1);
+
+            target.rowDistances[y] = rowDistance;
+            target.rowShifts[y] = sizeShift - level;
+            target.rowBases[y] = textureAtlas.offset(floor ? floorTexture : ceilingTexture, level);
+            target.rowFogs[y] = shading != null ? shading.fogLevel(rowDistance) : 0;
+        }
+    }
+
+    /**
+     * castFloorRows for a column-major framebuffer: the same floor and
+     * ceiling, written down each column of [from, to) so every write lands
+     * next to the last. A pixel's world position is its row's distance
+     * along its column's ray.
+     */
+    void castFloorColumns(int from, int to) {
+        for (int x = from; x < to; x++) {
+            castFloorSpan(x, 0, drawStarts[x], false);
+            castFloorSpan(x, drawEnds[x] + 1, screenHeight, true);
+        }
+    }
+
+    // Rows [from, to) of column x, all floor or all ceiling
+    private void castFloorSpan(int x, int from, int to, boolean floor) {
+        final int[] pixels = this.pixels;
+        final int[] texels = textureAtlas.getTexels();
+        final double[] rowDistances = target.rowDistances;
+        final int[] rowShifts = target.rowShifts;
+        final int[] rowBases = target.rowBases;
+        final double posX = this.posX;
+        final double posY = this.posY;
+        final double rayDirX = rayDirXs[x];
+        final double rayDirY = rayDirYs[x];
+        int i = x * screenHeight + from;
+
+        if (shading == null) {
+            for (int y = from; y < to; y++, i++) {
+                double rowDistance = rowDistances[y];
+                int levelShift = rowShifts[y];
+                int levelSize = 1 << levelShift;
+                int mask = levelSize - 1;
+                int u = (int)Math.floor((posX + rowDistance * rayDirX) * levelSize) & mask;
+                int v = (int)Math.floor((posY + rowDistance * rayDirY) * levelSize) & mask;
+                int texel = texels[rowBases[y] + (u << levelShift) + v];
+                pixels[i] = floor ? texel : ((texel >> 1) & 0x7F7F7F) | 0xFF000000;
+            }
+            return;
+        }
+
+        // Fog changes every row here, so every pixel takes its own shade;
+        // the light is looked up again only when the cell changes
+        final int[] tables = shading.getTables();
+        final int[] rowFogs = target.rowFogs;
+        final Lightmap lightmap = this.lightmap;
+        int light = floor ? ShadeTable.FULL_LIGHT : ShadeTable.HALF_LIGHT;
+        int cellX = Integer.MIN_VALUE;
+        int cellY = Integer.MIN_VALUE;
+        for (int y = from; y < to; y++, i++) {
+            double rowDistance = rowDistances[y];
+            int levelShift = rowShifts[y];
+            int levelSize = 1 << levelShift;
+            int mask = levelSize - 1;
+            int texelX = (int)Math.floor((posX + rowDistance * rayDirX) * levelSize);
+            int texelY = (int)Math.floor((posY + rowDistance * rayDirY) * levelSize);
+            int texel = texels[rowBases[y] + ((texelX & mask) << levelShift) + (texelY & mask)];
+            if (lightmap != null && (texelX >> levelShift != cellX || texelY >> levelShift != cellY)) {
+                cellX = texelX >> levelShift;
+                cellY = texelY >> levelShift;
+                int cellLight = lightmap.floorLevel(cellX, cellY);
+                light = floor ? cellLight : cellLight >> 1;
+            }
+            int offset = ShadeTable.offset(ShadeTable.shade(light, rowFogs[y]));
+            pixels[i] = tables[offset + ((texel >> 16) & 0xFF)]
+                    | tables[offset + 256 + ((texel >> 8) & 0xFF)]
+                    | tables[offset + 512 + (texel & 0xFF)];
+        }
+    }
+
+    // Texture one wall stripe starting at framebuffer index i; returns the
+    // index of the pixel below it, in either layout. Reads one column of the
+    // mip level that matches the stripe height, top to bottom.
+    private int drawTexturedStripe(TextureAtlas atlas, int x, int i, int lineHeight, int drawStart, int drawEnd) {
+        final int[] pixels = this.pixels;
+        final int[] texels = atlas.getTexels();
+        final int rowStep = columnMajor ? 1 : screenWidth;
+
+        int level = atlas.mipLevel(lineHeight);
+        int levelShift = atlas.getSizeShift() - level;
+        int levelSize = 1 << levelShift;
+        int mask = levelSize - 1;
+
+        int texture = hitValues[x] % atlas.getTextureCount();
+        int u = (int)(wallXs[x] * levelSize) & mask;
+        int column = atlas.offset(texture, level) + (u << levelShift);
+
+        // Texels per screen pixel, starting where the clipped stripe begins
+        double step = (double)levelSize / lineHeight;
+        double texPos = (drawStart - screenHeight / 2 + lineHeight / 2) * step;
+
+        if (shading != null) {
+            // Light and fog: one shade for the whole stripe. Magnified
+            // texels repeat down the stripe, so each run is shaded once
+            final int[] tables = shading.getTables();
+            int offset = ShadeTable.offset(columnShade(x));
+            int lastTexel = 0;
+            int shaded = tables[offset] | tables[offset + 256] | tables[offset + 512];
+            for (int y = drawStart; y <= drawEnd; y++, i += rowStep) {
+                int texel = texels[column + ((int)texPos & mask)];
+                if (texel != lastTexel) {
+                    lastTexel = texel;
+                    shaded = tables[offset + ((texel >> 16) & 0xFF)]
+                            | tables[offset + 256 + ((texel >> 8) & 0xFF)]
+                            | tables[offset + 512 + (texel & 0xFF)];
+                }
+                pixels[i] = shaded;
+                texPos += step;
+            }
+        } else if (hitSides[x] == 1) {
+            // y-sides at half brightness, as darker() does for flat colours
+            for (int y = drawStart; y <= drawEnd; y++, i += rowStep) {
+                int texel = texels[column + ((int)texPos & mask)];
+                pixels[i] = ((texel >> 1) & 0x7F7F7F) | 0xFF000000;
+                texPos += step;
+            }
+        } else {
+            for (int y = drawStart; y <= drawEnd; y++, i += rowStep) {
+                pixels[i] = texels[column + ((int)texPos & mask)];
+                texPos += step;
+            }
+        }
+        return i;
+    }
+
+    private void present() {
+        upload(pixels, screenWidth, screenHeight, target, columnMajor);
+    }
+
+    /** Upload a frame finished by the render thread. FX thread only. */
+    public void present(FrameBuffer frame) {
+        long start = clock();
+        upload(frame.pixels, frame.width, frame.height, targets[frame.step], frame.columnMajor);
+        record(FrameStage.PRESENT, start);
+    }
+
+    // Upload a framebuffer in one bulk call and draw it, stretched to the
+    // output size when rendering below full resolution
+    private void upload(int[] pixels, int width, int height, RenderTarget target, boolean columnMajor) {
+        if (target.image == null) {
+            target.image = new WritableImage(width, height);
+        }
+        int[] rows = columnMajor ? target.transposeToRows(pixels) : pixels;
+        target.image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbPreInstance(), rows, 0, width);
+        if (width == outputWidth && height == outputHeight) {
+            gc.drawImage(target.image, 0, 0);
+        } else {
+            gc.drawImage(target.image, 0, 0, width, height, 0, 0, outputWidth, outputHeight);
+        }
+    }
+
+    static int toArgb(Color color) {
+        int a = (int)Math.round(color.getOpacity() * 255);
+        int r = (int)Math.round(color.getRed() * 255);
+        int g = (int)Math.round(color.getGreen() * 255);
+        int b = (int)Math.round(color.getBlue() * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    public boolean isSpanCoherence() { return spanCoherence; }
+    public void setSpanCoherence(boolean spanCoherence) { this.spanCoherence = spanCoherence; }
+    public boolean isEmptySpaceSkipping() { return emptySpaceSkipping; }
+    public void setEmptySpaceSkipping(boolean emptySpaceSkipping) { this.emptySpaceSkipping = emptySpaceSkipping; }
+    public double getMaxViewDistance() { return maxViewDistance; }
+    public void setMaxViewDistance(double maxViewDistance) {
+        this.maxViewDistance = maxViewDistance;
+        settingsChanged = true;
+    }
+    public TextureAtlas getTextureAtlas() { return textureAtlas; }
+    public void setTextureAtlas(TextureAtlas textureAtlas) {
+        this.textureAtlas = textureAtlas;
+        settingsChanged = true;
+    }
+    public ShadeTable getShading() { return shading; }
+    public Lightmap getLightmap() { return lightmap; }
+    /**
+     * Light and fog walls, floors and sprites through shading, with static
+     * light from lightmap when it is not null. A null shading goes back to
+     * plain colours.
+     */
+    public void setShading(ShadeTable shading, Lightmap lightmap) {
+        if (lightmap != null && lightmap.getMap() != map) {
+            throw new IllegalArgumentException("Lightmap was baked for a different map");
+        }
+        this.shading = shading;
+        this.lightmap = lightmap;
+        canvasShades = null;
+        canvasGlassShades = null;
+        settingsChanged = true;
+    }
+    public PotentiallyVisibleSets getVisibleSets() { return visibleSets; }
+    /**
+     * Cull sprites with visibleSets, which the renderer then keeps up to
+     * date with the map on its own thread; null culls by view only.
+     */
+    public void setVisibleSets(PotentiallyVisibleSets visibleSets) {
+        if (visibleSets != null && visibleSets.getMap() != map) {
+            throw new IllegalArgumentException("Visible sets were built for a different map");
+        }
+        this.visibleSets = visibleSets;
+        settingsChanged = true;
+    }
+    public boolean isFloorCasting() { return floorCasting; }
+    public void setFloorCasting(boolean floorCasting) {
+        this.floorCasting = floorCasting;
+        settingsChanged = true;
+    }
+    public void setFloorTextures(int floorTexture, int ceilingTexture) {
+        this.floorTexture = floorTexture;
+        this.ceilingTexture = ceilingTexture;
+        settingsChanged = true;
+    }
+    public void setSprites(SpriteList sprites, TextureAtlas spriteAtlas) {
+        this.sprites = sprites;
+        this.spriteAtlas = spriteAtlas;
+        settingsChanged = true;
+    }
+    // Draw DOOR tiles part open as these doors say; without, they stay shut
+    public void setDoors(Doors doors) {
+        this.doors = doors;
+        settingsChanged = true;
+    }
+    /**
+     * How far between the player's previous and current simulation step to
+     * draw the next frames, from 0 to 1. 1, the default, draws the player
+     * as it is.
+     */
+    public void setInterpolation(double interpolation) { this.interpolation = interpolation; }
+    /**
+     * Time each stage of the frame into stats, or null to stop. The caller
+     * owns the frame boundary: it times its own stages (input, the whole
+     * frame) and calls stats.endFrame() after render() or renderFrame().
+     */
+    public void setFrameStats(FrameStats stats) { this.stats = stats; }
+    public FrameStats getFrameStats() { return stats; }
+    public PacketCaster getPacketCaster() { return packetCaster; }
+    public void setPacketCaster(PacketCaster packetCaster) {
+        this.packetCaster = packetCaster;
+        // Strip edges depend on the packet width
+        if (workers != null) {
+            for (RenderTarget target : targets) {
+                buildTasks(target);
+            }
+        }
+    }
+    public int getVisibleSpriteCount() { return spritePass.getVisibleCount(); }
+    public int getResolutionStep() { return resolutionStep; }
+    public int getOutputWidth() { return outputWidth; }
+    public int getOutputHeight() { return outputHeight; }
+    public int getResolutionStepCount() { return targets.length; }
+    // Size of the last frame rendered, which is below the output size at lower steps
+    public int getScreenWidth() { return screenWidth; }
+    public int getScreenHeight() { return screenHeight; }
+    public int getThreadCount() { return threadCount; }
+    public RenderMode getMode() { return mode; }
+    public void setMode(RenderMode mode) {
+        this.mode = mode;
+        settingsChanged = true;
+    }
+    public boolean isColumnMajor() { return columnMajor; }
+    /** Lay the framebuffer out column by column from the next frame on. */
+    public void setColumnMajor(boolean columnMajor) {
+        this.columnMajor = columnMajor;
+        settingsChanged = true;
+    }
+    // The last frame in the current layout
+    public int[] getPixels() { return pixels; }
+    /**
+     * The last frame row-major, as it is uploaded: the framebuffer itself,
+     * or a transposed copy reused until the next call.
+     */
+    public int[] getRowPixels() {
+        return columnMajor ? target.transposeToRows(pixels) : pixels;
+    }
+}
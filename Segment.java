@@ -0,0 +1,22 @@
+package com.example.raycastinggame;
+
+/** A wall between two points, at any angle, seen from both sides. */
+final class Segment {
+    final double x0;
+    final double y0;
+    final double x1;
+    final double y1;
+    // Tile value it is coloured as, the way a grid wall of that value is
+    final int value;
+
+    Segment(double x0, double y0, double x1, double y1, int value) {
+        if (x0 == x1 && y0 == y1) {
+            throw new IllegalArgumentException("Segment has no length at (" + x0 + ", " + y0 + ")");
+        }
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.value = value;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.raycastinggame;
+
+/**
+ * Precomputed ARGB shading. A shade is one light level and one fog level,
+ * and each shade has a lookup table per colour channel that scales the
+ * channel by the light and mixes it toward the fog colour. Shading a pixel
+ * is then three table reads OR-ed together, with no arithmetic and no
+ * allocation.
+ *
+ * The renderer picks one shade per wall stripe, floor row or sprite, since
+ * each lies at one distance, so the tables a stripe reads stay in cache.
+ */
+final class ShadeTable {
+    static final int LIGHT_LEVELS = 16;
+    static final int FOG_LEVELS = 32;
+    static final int FULL_LIGHT = LIGHT_LEVELS - 1;
+    static final int HALF_LIGHT = FULL_LIGHT / 2;
+
+    // Per shade: red, green and blue tables of 256 entries each
+    private static final int TABLE_SIZE = 3 * 256;
+
+    private final int[] tables;
+    private final int fogArgb;
+    private final double fogStart;
+    private final double fogLevelsPerUnit;
+
+    /**
+     * Fog fades in linearly from fogStart to fogEnd, where everything is
+     * fogArgb; pass an infinite fogStart for light levels only.
+     */
+    ShadeTable(int fogArgb, double fogStart, double fogEnd) {
+        if (!(fogEnd > fogStart) && fogStart != Double.POSITIVE_INFINITY) {
+            throw new IllegalArgumentException("Fog must end after it starts: " + fogStart + " to " + fogEnd);
+        }
+        this.fogArgb = fogArgb;
+        this.fogStart = fogStart;
+        this.fogLevelsPerUnit = fogStart == Double.POSITIVE_INFINITY ? 0 : (FOG_LEVELS - 1) / (fogEnd - fogStart);
+
+        this.tables = new int[LIGHT_LEVELS * FOG_LEVELS * TABLE_SIZE];
+        int[] fogChannels = { (fogArgb >> 16) & 0xFF, (fogArgb >> 8) & 0xFF, fogArgb & 0xFF };
+        for (int light = 0; light < LIGHT_LEVELS; light++) {
+            for (int fog = 0; fog < FOG_LEVELS; fog++) {
+                double scale = (double)light / FULL_LIGHT;
+                double fogged = (double)fog / (FOG_LEVELS - 1);
+                int offset = offset(shade(light, fog));
+                for (int channel = 0; channel < 3; channel++) {
+                    int shift = 16 - 8 * channel;
+                    int alpha = channel == 0 ? 0xFF000000 : 0;
+                    for (int value = 0; value < 256; value++) {
+                        int shaded = (int)Math.round(value * scale * (1 - fogged) + fogChannels[channel] * fogged);
+                        tables[offset + channel * 256 + value] = alpha | (shaded << shift);
+                    }
+                }
+            }
+        }
+    }
+
+    /** The shade for a light level and a fog level. */
+    static int shade(int light, int fog) {
+        return light * FOG_LEVELS + fog;
+    }
+
+    /** Where a shade's red table starts in getTables(); green and blue follow. */
+    static int offset(int shade) {
+        return shade * TABLE_SIZE;
+    }
+
+    /** Fog level at a distance from the camera. */
+    int fogLevel(double distance) {
+        double level = (distance - fogStart) * fogLevelsPerUnit;
+        if (!(level > 0)) {
+            return 0;
+        }
+        return level >= FOG_LEVELS - 1 ? FOG_LEVELS - 1 : (int)level;
+    }
+
+    /** One colour in one shade; the hot loops read getTables() directly. */
+    int apply(int shade, int argb) {
+        int offset = offset(shade);
+        return tables[offset + ((argb >> 16) & 0xFF)]
+                | tables[offset + 256 + ((argb >> 8) & 0xFF)]
+                | tables[offset + 512 + (argb & 0xFF)];
+    }
+
+    int[] getTables() { return tables; }
+    int getFogArgb() { return fogArgb; }
+}
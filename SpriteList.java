@@ -0,0 +1,149 @@
+package com.example.raycastinggame;
+
+import java.util.Arrays;
+
+/**
+ * World sprites (pickups, enemies, projectiles) stored as parallel
+ * primitive arrays and bucketed by 8x8 map cells, so the renderer only
+ * looks at sprites in buckets the camera can see. Ids stay stable until
+ * a sprite is removed; removed ids are reused by later adds.
+ */
+final class SpriteList {
+    static final int BUCKET_SHIFT = 3;
+
+    private static final int NONE = -1;
+
+    private final int bucketColumns;
+    private final int bucketRows;
+    private final int[] heads;
+
+    private double[] xs;
+    private double[] ys;
+    private int[] textures;
+    private int[] buckets;   // bucket of each live sprite, NONE when free
+    private int[] next;      // next sprite in the bucket, or next free id
+    private int[] prev;
+    private int capacity;
+    private int size;
+    private int freeHead = NONE;
+
+    // Bumped by every change, so the renderer can tell the sprites are as drawn
+    private long version;
+
+    SpriteList(int mapWidth, int mapHeight) {
+        bucketColumns = Math.max(1, (mapWidth + (1 << BUCKET_SHIFT) - 1) >> BUCKET_SHIFT);
+        bucketRows = Math.max(1, (mapHeight + (1 << BUCKET_SHIFT) - 1) >> BUCKET_SHIFT);
+        heads = new int[bucketColumns * bucketRows];
+        Arrays.fill(heads, NONE);
+        grow(64);
+    }
+
+    int add(double x, double y, int texture) {
+        if (freeHead == NONE) {
+            grow(capacity * 2);
+        }
+        int id = freeHead;
+        freeHead = next[id];
+
+        xs[id] = x;
+        ys[id] = y;
+        textures[id] = texture;
+        link(id, bucketOf(x, y));
+        size++;
+        version++;
+        return id;
+    }
+
+    void move(int id, double x, double y) {
+        checkLive(id);
+        xs[id] = x;
+        ys[id] = y;
+        int bucket = bucketOf(x, y);
+        if (bucket != buckets[id]) {
+            unlink(id);
+            link(id, bucket);
+        }
+        version++;
+    }
+
+    void remove(int id) {
+        checkLive(id);
+        unlink(id);
+        buckets[id] = NONE;
+        next[id] = freeHead;
+        freeHead = id;
+        size--;
+        version++;
+    }
+
+    int size() { return size; }
+    double getX(int id) { return xs[id]; }
+    double getY(int id) { return ys[id]; }
+    int getTexture(int id) { return textures[id]; }
+    void setTexture(int id, int texture) {
+        textures[id] = texture;
+        version++;
+    }
+    long getVersion() { return version; }
+
+    // Bucket traversal for the renderer: first sprite in bucket (bx, by) and
+    // the one after a given sprite, NONE (-1) at the end
+    int getBucketColumns() { return bucketColumns; }
+    int getBucketRows() { return bucketRows; }
+    int firstInBucket(int bx, int by) { return heads[by * bucketColumns + bx]; }
+    int nextInBucket(int id) { return next[id]; }
+
+    private int bucketOf(double x, double y) {
+        int bx = Math.max(0, Math.min(bucketColumns - 1, (int)x >> BUCKET_SHIFT));
+        int by = Math.max(0, Math.min(bucketRows - 1, (int)y >> BUCKET_SHIFT));
+        return by * bucketColumns + bx;
+    }
+
+    private void link(int id, int bucket) {
+        int head = heads[bucket];
+        buckets[id] = bucket;
+        prev[id] = NONE;
+        next[id] = head;
+        if (head != NONE) {
+            prev[head] = id;
+        }
+        heads[bucket] = id;
+    }
+
+    private void unlink(int id) {
+        int before = prev[id];
+        int after = next[id];
+        if (before == NONE) {
+            heads[buckets[id]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        }
+    }
+
+    private void checkLive(int id) {
+        if (id < 0 || id >= capacity || buckets[id] == NONE) {
+            throw new IllegalArgumentException("No sprite with id " + id);
+        }
+    }
+
+    private void grow(int newCapacity) {
+        int oldCapacity = capacity;
+        xs = Arrays.copyOf(xs == null ? new double[0] : xs, newCapacity);
+        ys = Arrays.copyOf(ys == null ? new double[0] : ys, newCapacity);
+        textures = Arrays.copyOf(textures == null ? new int[0] : textures, newCapacity);
+        buckets = Arrays.copyOf(buckets == null ? new int[0] : buckets, newCapacity);
+        next = Arrays.copyOf(next == null ? new int[0] : next, newCapacity);
+        prev = Arrays.copyOf(prev == null ? new int[0] : prev, newCapacity);
+        capacity = newCapacity;
+
+        // Chain the new slots onto the free list, lowest id first
+        for (int id = newCapacity - 1; id >= oldCapacity; id--) {
+            buckets[id] = NONE;
+            next[id] = freeHead;
+            freeHead = id;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.raycastinggame;
+
+import java.util.Arrays;
+
+/**
+ * Per-frame sprite work for the Renderer: cull against the view frustum
+ * and the camera cell's potentially visible set, sort far to near, then
+ * draw stripes clipped against the wall z-buffer.
+ * Buffers grow to the largest visible count seen and are reused, so a
+ * steady frame allocates nothing.
+ */
+final class SpritePass {
+    // Sprites closer than this are behind or inside the camera
+    private static final double NEAR_PLANE = 0.1;
+
+    private long[] keys = new long[64];
+    private double[] depths = new double[64];
+    private int[] centers = new int[64];
+    private int[] sizes = new int[64];
+    private int[] textures = new int[64];
+    private int[] shades = new int[64];
+
+    // Drawing order, far to near: indexes into the arrays above
+    private int[] order = new int[64];
+    private int visible;
+
+    int getVisibleCount() { return visible; }
+
+    /**
+     * Collect the sprites that can show up on screen. Only buckets inside
+     * the bounding box of the view triangle out to farDistance are visited;
+     * nothing beyond the farthest wall can be seen in any column. With
+     * shading, each sprite gets the fog of its depth and the floor light of
+     * its cell. With visibleSets, sprites whose whole footprint lies in
+     * cells the camera's cell can't see are dropped too.
+     */
+    void prepare(SpriteList sprites, double posX, double posY, double dirX, double dirY,
+                 double planeX, double planeY, double farDistance, int width, int height,
+                 ShadeTable shading, Lightmap lightmap, PotentiallyVisibleSets visibleSets) {
+        visible = 0;
+        int cameraX = (int)Math.floor(posX);
+        int cameraY = (int)Math.floor(posY);
+
+        // Inverse of the [plane dir] camera matrix
+        double invDet = 1.0 / (planeX * dirY - dirX * planeY);
+
+        int minBx = 0;
+        int maxBx = sprites.getBucketColumns() - 1;
+        int minBy = 0;
+        int maxBy = sprites.getBucketRows() - 1;
+        if (farDistance < Double.POSITIVE_INFINITY) {
+            // Bounding box of the view triangle, widened by a sprite's half width
+            double leftX = posX + farDistance * (dirX - planeX);
+            double leftY = posY + farDistance * (dirY - planeY);
+            double rightX = posX + farDistance * (dirX + planeX);
+            double rightY = posY + farDistance * (dirY + planeY);
+            minBx = bucket(Math.min(posX, Math.min(leftX, rightX)) - 1, sprites.getBucketColumns());
+            maxBx = bucket(Math.max(posX, Math.max(leftX, rightX)) + 1, sprites.getBucketColumns());
+            minBy = bucket(Math.min(posY, Math.min(leftY, rightY)) - 1, sprites.getBucketRows());
+            maxBy = bucket(Math.max(posY, Math.max(leftY, rightY)) + 1, sprites.getBucketRows());
+        }
+
+        for (int by = minBy; by <= maxBy; by++) {
+            for (int bx = minBx; bx <= maxBx; bx++) {
+                for (int id = sprites.firstInBucket(bx, by); id >= 0; id = sprites.nextInBucket(id)) {
+                    double spriteX = sprites.getX(id) - posX;
+                    double spriteY = sprites.getY(id) - posY;
+
+                    // Camera space: depth along dir, and sideways along the plane
+                    double transformX = invDet * (dirY * spriteX - dirX * spriteY);
+                    double depth = invDet * (-planeY * spriteX + planeX * spriteY);
+                    if (depth < NEAR_PLANE || depth > farDistance) {
+                        continue;
+                    }
+
+                    // Same span draw() uses: [center - size / 2, center - size / 2 + size)
+                    int size = (int)Math.abs(height / depth);
+                    int center = (int)((width / 2) * (1 + transformX / depth));
+                    int left = center - size / 2;
+                    if (left + size <= 0 || left >= width) {
+                        continue;
+                    }
+
+                    // A sprite is a unit-wide billboard, so any cell within
+                    // half a unit of its centre can show part of it
+                    if (visibleSets != null && !visibleSets.canSeeArea(cameraX, cameraY,
+                            sprites.getX(id) - 0.5, sprites.getY(id) - 0.5,
+                            sprites.getX(id) + 0.5, sprites.getY(id) + 0.5)) {
+                        continue;
+                    }
+
+                    ensureCapacity(visible + 1);
+                    depths[visible] = depth;
+                    centers[visible] = center;
+                    sizes[visible] = size;
+                    textures[visible] = sprites.getTexture(id);
+                    if (shading != null) {
+                        int light = lightmap != null
+                                ? lightmap.floorLevel(sprites.getX(id), sprites.getY(id)) : ShadeTable.FULL_LIGHT;
+                        shades[visible] = ShadeTable.shade(light, shading.fogLevel(depth));
+                    }
+
+                    // Positive float bits sort like the floats, slot in the low half
+                    keys[visible] = ((long)Float.floatToRawIntBits((float)depth) << 32) | visible;
+                    visible++;
+                }
+            }
+        }
+
+        sortKeys(keys, 0, visible - 1);
+        for (int k = 0; k < visible; k++) {
+            order[k] = (int)keys[visible - 1 - k];
+        }
+    }
+
+    private static int bucket(double coordinate, int buckets) {
+        int bucket = (int)Math.floor(coordinate) >> SpriteList.BUCKET_SHIFT;
+        return Math.max(0, Math.min(buckets - 1, bucket));
+    }
+
+    /**
+     * Draw the visible sprites into columns [from, to) of the framebuffer,
+     * far to near, skipping stripes behind the wall in zBuffer and texels
+     * with less than half alpha. shading must be the one given to prepare.
+     * pixels is row-major, or column-major when columnMajor is set. When
+     * layers is not null, it is handed each stripe's column and depth just
+     * before the stripe is drawn.
+     */
+    void draw(int from, int to, int[] pixels, double[] zBuffer, TextureAtlas atlas, int width, int height,
+              ShadeTable shading, boolean columnMajor, DepthLayers layers) {
+        final int[] texels = atlas.getTexels();
+        final int sizeShift = atlas.getSizeShift();
+        final int[] tables = shading != null ? shading.getTables() : null;
+        final int rowStep = columnMajor ? 1 : width;
+
+        for (int k = 0; k < visible; k++) {
+            int slot = order[k];
+            double depth = depths[slot];
+            int size = sizes[slot];
+            if (size == 0) {
+                continue;
+            }
+            int left = centers[slot] - size / 2;
+
+            int startX = Math.max(from, left);
+            int endX = Math.min(to, left + size);
+            if (startX >= endX) {
+                continue;
+            }
+
+            int drawStart = -size / 2 + height / 2;
+            if (drawStart < 0) drawStart = 0;
+            int drawEnd = size / 2 + height / 2;
+            if (drawEnd >= height) drawEnd = height - 1;
+
+            int level = atlas.mipLevel(size);
+            int levelShift = sizeShift - level;
+            int levelSize = 1 << levelShift;
+            int mask = levelSize - 1;
+            int base = atlas.offset(textures[slot] % atlas.getTextureCount(), level);
+            double step = (double)levelSize / size;
+            double startPos = (drawStart - height / 2 + size / 2) * step;
+            int offset = ShadeTable.offset(shades[slot]);
+
+            for (int x = startX; x < endX; x++) {
+                if (depth >= zBuffer[x]) {
+                    continue;
+                }
+                if (layers != null) {
+                    layers.blendBehind(x, depth);
+                }
+                int u = (int)((long)(x - left) * levelSize / size) & mask;
+                int column = base + (u << levelShift);
+                double texPos = startPos;
+                int i = columnMajor ? x * height + drawStart : drawStart * width + x;
+                for (int y = drawStart; y <= drawEnd; y++, i += rowStep) {
+                    int texel = texels[column + ((int)texPos & mask)];
+                    if (texel >>> 24 >= 0x80) {
+                        pixels[i] = tables == null ? texel | 0xFF000000
+                                : tables[offset + ((texel >> 16) & 0xFF)]
+                                | tables[offset + 256 + ((texel >> 8) & 0xFF)]
+                                | tables[offset + 512 + (texel & 0xFF)];
+                    }
+                    texPos += step;
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= keys.length) {
+            return;
+        }
+        int capacity = Math.max(needed, keys.length * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        centers = Arrays.copyOf(centers, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        textures = Arrays.copyOf(textures, capacity);
+        shades = Arrays.copyOf(shades, capacity);
+        order = Arrays.copyOf(order, capacity);
+    }
+
+    // In-place quicksort with insertion sort for short ranges; recursing on
+    // the smaller side keeps the stack at O(log n)
+    private static void sortKeys(long[] a, int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] < a[low]) swap(a, mid, low);
+            if (a[high] < a[low]) swap(a, high, low);
+            if (a[high] < a[mid]) swap(a, high, mid);
+            long pivot = a[mid];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i++, j--);
+                }
+            }
+
+            if (j - low < high - i) {
+                sortKeys(a, low, j);
+                low = i;
+            } else {
+                sortKeys(a, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            long key = a[i];
+            int j = i - 1;
+            while (j >= low && a[j] > key) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = key;
+        }
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.raycastinggame;
+
+/**
+ * Square power-of-two wall textures packed into one int[] of ARGB texels,
+ * with a full mip chain for each. Every level is stored column-major, so a
+ * vertical wall stripe reads consecutive ints, and texel coordinates wrap
+ * with a mask instead of a modulo.
+ */
+final class TextureAtlas {
+    private final int sizeShift;
+    private final int levels;
+    private final int textureCount;
+    private final int[] texels;
+
+    // Start of each texture's level in texels, indexed texture * levels + level
+    private final int[] offsets;
+
+    /**
+     * @param sizeShift log2 of the texture size
+     * @param textures  one column-major size * size ARGB array per texture
+     */
+    TextureAtlas(int sizeShift, int[][] textures) {
+        if (sizeShift < 0 || sizeShift > 12) {
+            throw new IllegalArgumentException("Texture size 2^" + sizeShift + " out of range");
+        }
+        this.sizeShift = sizeShift;
+        this.levels = sizeShift + 1;
+        this.textureCount = textures.length;
+        this.offsets = new int[textureCount * levels];
+
+        // Level l holds (size >> l)^2 texels, so each chain is just under 4/3 of the base
+        int size = 1 << sizeShift;
+        int total = 0;
+        for (int t = 0; t < textureCount; t++) {
+            if (textures[t].length != size * size) {
+                throw new IllegalArgumentException("Texture " + t + " is not " + size + "x" + size);
+            }
+            for (int level = 0; level < levels; level++) {
+                offsets[t * levels + level] = total;
+                int levelSize = size >> level;
+                total += levelSize * levelSize;
+            }
+        }
+
+        this.texels = new int[total];
+        for (int t = 0; t < textureCount; t++) {
+            System.arraycopy(textures[t], 0, texels, offsets[t * levels], size * size);
+            for (int level = 1; level < levels; level++) {
+                downsample(offsets[t * levels + level - 1], offsets[t * levels + level], size >> level);
+            }
+        }
+    }
+
+    // 2x2 box filter from the level above into a level of the given size
+    private void downsample(int from, int to, int size) {
+        int fromSize = size * 2;
+        for (int u = 0; u < size; u++) {
+            for (int v = 0; v < size; v++) {
+                int a = texels[from + (2 * u) * fromSize + 2 * v];
+                int b = texels[from + (2 * u) * fromSize + 2 * v + 1];
+                int c = texels[from + (2 * u + 1) * fromSize + 2 * v];
+                int d = texels[from + (2 * u + 1) * fromSize + 2 * v + 1];
+                texels[to + u * size + v] = average(a, b, c, d);
+            }
+        }
+    }
+
+    private static int average(int a, int b, int c, int d) {
+        int alpha = (((a >>> 24) + (b >>> 24) + (c >>> 24) + (d >>> 24)) >> 2) << 24;
+        int red = ((((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF)) >> 2) << 16;
+        int green = ((((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF)) >> 2) << 8;
+        int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF)) >> 2;
+        return alpha | red | green | blue;
+    }
+
+    /**
+     * Mip level for a wall stripe of the given on-screen height: the level
+     * where one texel covers about one pixel, so distant walls read a small
+     * level that stays in cache.
+     */
+    int mipLevel(int lineHeight) {
+        if (lineHeight <= 0) {
+            return levels - 1;
+        }
+        // Texels per pixel is size / lineHeight; the level is floor(log2) of
+        // that, which is sizeShift - ceil(log2(lineHeight)) in integers
+        int level = sizeShift - (32 - Integer.numberOfLeadingZeros(lineHeight - 1));
+        return Math.max(0, Math.min(level, levels - 1));
+    }
+
+    int getSizeShift() { return sizeShift; }
+    int getSize() { return 1 << sizeShift; }
+    int getLevels() { return levels; }
+    int getTextureCount() { return textureCount; }
+    int[] getTexels() { return texels; }
+
+    int offset(int texture, int level) {
+        return offsets[texture * levels + level];
+    }
+
+    /**
+     * The built-in set, matching the flat wall colours: red brick, green
+     * stone, blue tiles and yellow planks, 64x64 each.
+     */
+    static TextureAtlas createDefault() {
+        int shift = 6;
+        int size = 1 << shift;
+        int[][] textures = new int[4][size * size];
+
+        for (int u = 0; u < size; u++) {
+            for (int v = 0; v < size; v++) {
+                int i = u * size + v;
+
+                // Brick: rows of 8, offset by half a brick every other row
+                int brickU = (u + ((v >> 3) & 1) * 8) & 15;
+                boolean mortar = (v & 7) == 0 || brickU == 0;
+                textures[0][i] = mortar ? rgb(170, 170, 160) : rgb(150 + noise(u, v, 40), 30, 25);
+
+                // Stone: mottled green
+                int stone = 70 + noise(u, v, 60);
+                textures[1][i] = rgb(stone / 3, stone, stone / 3);
+
+                // Tiles: 16x16 squares with dark grout
+                boolean grout = (u & 15) == 0 || (v & 15) == 0;
+                textures[2][i] = grout ? rgb(20, 20, 60) : rgb(40, 60 + ((u ^ v) & 31), 200);
+
+                // Planks: vertical boards with grain
+                boolean seam = (u & 15) == 15;
+                int grain = 180 + ((v * 3 + (u & 15) * 7) % 23) * 2;
+                textures[3][i] = seam ? rgb(90, 70, 10) : rgb(grain, grain * 4 / 5, 30);
+            }
+        }
+        return new TextureAtlas(shift, textures);
+    }
+
+    /**
+     * The built-in sprite set: a gold orb pickup, a red enemy and a blue
+     * projectile, 64x64 each, transparent (alpha 0) around the shape.
+     */
+    static TextureAtlas createDefaultSprites() {
+        int shift = 6;
+        int size = 1 << shift;
+        int[][] textures = new int[3][size * size];
+
+        for (int u = 0; u < size; u++) {
+            for (int v = 0; v < size; v++) {
+                int i = u * size + v;
+                double dx = (u + 0.5) / size - 0.5;
+
+                // Orb resting on the floor, lit from the upper left
+                double orbY = (v + 0.5) / size - 0.8;
+                double orb = dx * dx + orbY * orbY;
+                if (orb < 0.15 * 0.15) {
+                    int light = (int)(255 * (1 - Math.sqrt(orb) / 0.15 * 0.6) - (dx + orbY) * 200);
+                    light = Math.max(60, Math.min(255, light));
+                    textures[0][i] = rgb(light, light * 4 / 5, 40);
+                }
+
+                // Enemy: a diamond body with two eyes
+                double bodyY = (v + 0.5) / size - 0.6;
+                if (Math.abs(dx) + Math.abs(bodyY) < 0.35) {
+                    boolean eye = Math.abs(Math.abs(dx) - 0.1) < 0.04 && Math.abs(bodyY + 0.1) < 0.04;
+                    textures[1][i] = eye ? rgb(255, 255, 255) : rgb(180 + noise(u, v, 50), 20, 30);
+                }
+
+                // Projectile: a small glowing ball at eye height
+                double shotY = (v + 0.5) / size - 0.5;
+                double shot = Math.sqrt(dx * dx + shotY * shotY);
+                if (shot < 0.08) {
+                    int glow = (int)(255 - shot / 0.08 * 120);
+                    textures[2][i] = rgb(glow / 2, glow * 3 / 4, 255);
+                }
+            }
+        }
+        return new TextureAtlas(shift, textures);
+    }
+
+    // Cheap repeatable hash noise in [0, range)
+    private static int noise(int u, int v, int range) {
+        int h = u * 374761393 + v * 668265263;
+        h = (h ^ (h >>> 13)) * 1274126177;
+        return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % range;
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.raycastinggame;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Packet DDA on the incubating Vector API: one lane per column, as many
+ * adjacent columns as the preferred double vector holds (4 with AVX2, 8
+ * with AVX-512). Every lane picks its x or y step from a lane-wise compare
+ * instead of a branch, steps under a mask, and looks its tile up in the
+ * frame's MapSnapshot, so a mapped map is never copied onto the heap. Lanes retire as they hit a wall or pass the view
+ * distance, and the packet ends when the last one does. A lane that enters
+ * a see-through tile or a door retires too and is handed back to the
+ * Renderer, which traces that one column with its scalar loop.
+ *
+ * Boundary distances are first + steps * delta, the same arithmetic the
+ * scalar loop uses, so every column hits the same cell on the same side.
+ * Empty-space skipping is not vectorized; packets step cell by cell.
+ *
+ * On JDK 17 this is slower than the scalar loop: the tile lookups go lane by
+ * lane, and a packet runs as long as its longest ray. It is off by default
+ * and kept for measuring on newer JDKs with vector gathers.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and run, and is only
+ * reached through PacketCaster.loadVector(columns).
+ */
+final class VectorDda implements PacketCaster {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = DOUBLES.length();
+
+    // The tiles the coming frame draws, read in place whatever backs them
+    private MapSnapshot snapshot;
+
+    // Lane scratch by column. Workers' ranges start on multiples of
+    // packetWidth(), so no packet spills into another worker's slots;
+    // padded by a packet for a partial one at the right edge
+    private final Packet packet;
+
+    VectorDda(int columns) {
+        if (columns < 1) {
+            throw new IllegalArgumentException("columns must be at least 1: " + columns);
+        }
+        this.packet = new Packet(columns + LANES);
+    }
+
+    @Override
+    public boolean prepare(MapSnapshot next) {
+        snapshot = next;
+        return true;
+    }
+
+    @Override
+    public int packetWidth() {
+        return LANES;
+    }
+
+    @Override
+    public long trace(double posX, double posY, int startIndex,
+                      double[] rayDirXs, double[] rayDirYs, double[] deltaDistXs, double[] deltaDistYs,
+                      double maxViewDistance, int from, int to, int[] hitIndexes, int[] hitSides) {
+        final Packet packet = this.packet;
+        long steps = 0;
+        int x = from;
+        for (; x + LANES <= to; x += LANES) {
+            steps += packet.trace(posX, posY, startIndex, maxViewDistance,
+                    rayDirXs, rayDirYs, deltaDistXs, deltaDistYs, x, DOUBLES.maskAll(true));
+            packet.finish(x, LANES, hitIndexes, hitSides);
+        }
+        if (x < to) {
+            steps += packet.trace(posX, posY, startIndex, maxViewDistance,
+                    rayDirXs, rayDirYs, deltaDistXs, deltaDistYs, x, DOUBLES.indexInRange(x, to));
+            packet.finish(x, to - x, hitIndexes, hitSides);
+        }
+        return steps;
+    }
+
+    /**
+     * The stepping loop and its lane scratch, one slot per column. Kept
+     * apart from the column loop so C2 compiles the stepping loop whole;
+     * past its inlining budget the masks stop being registers and are
+     * boxed every step.
+     */
+    private final class Packet {
+        private final double[] laneIndexes;
+        private final double[] laneSides;
+        private final double[] laneTiles;
+
+        Packet(int slots) {
+            this.laneIndexes = new double[slots];
+            this.laneSides = new double[slots];
+            this.laneTiles = new double[slots];
+        }
+
+        /** Trace the lanes in inRange of the packet at column x into the scratch arrays. */
+        long trace(double posX, double posY, int startIndex, double maxViewDistance,
+                   double[] rayDirXs, double[] rayDirYs, double[] deltaDistXs, double[] deltaDistYs,
+                   int x, VectorMask<Double> inRange) {
+            final MapSnapshot tiles = VectorDda.this.snapshot;
+            final int stride = tiles.getStride();
+            final double[] laneIndexes = this.laneIndexes;
+            final double[] laneTiles = this.laneTiles;
+            final DoubleVector zero = DoubleVector.zero(DOUBLES);
+            final DoubleVector one = DoubleVector.broadcast(DOUBLES, 1);
+
+            // Distance to the first boundary is (pos - cell) or (cell + 1 - pos)
+            // times delta, depending on the direction
+            int startMapX = (int)posX;
+            int startMapY = (int)posY;
+            DoubleVector towardLowX = DoubleVector.broadcast(DOUBLES, posX - startMapX);
+            DoubleVector towardHighX = DoubleVector.broadcast(DOUBLES, startMapX + 1.0 - posX);
+            DoubleVector towardLowY = DoubleVector.broadcast(DOUBLES, posY - startMapY);
+            DoubleVector towardHighY = DoubleVector.broadcast(DOUBLES, startMapY + 1.0 - posY);
+
+            DoubleVector rayDirX = DoubleVector.fromArray(DOUBLES, rayDirXs, x, inRange);
+            DoubleVector rayDirY = DoubleVector.fromArray(DOUBLES, rayDirYs, x, inRange);
+            DoubleVector deltaX = DoubleVector.fromArray(DOUBLES, deltaDistXs, x, inRange);
+            DoubleVector deltaY = DoubleVector.fromArray(DOUBLES, deltaDistYs, x, inRange);
+
+            VectorMask<Double> negativeX = rayDirX.compare(VectorOperators.LT, zero);
+            VectorMask<Double> negativeY = rayDirY.compare(VectorOperators.LT, zero);
+            DoubleVector firstX = towardHighX.mul(deltaX).blend(towardLowX.mul(deltaX), negativeX);
+            DoubleVector firstY = towardHighY.mul(deltaY).blend(towardLowY.mul(deltaY), negativeY);
+            DoubleVector stepIndexX = one.blend(one.neg(), negativeX);
+            DoubleVector stepIndexY = DoubleVector.broadcast(DOUBLES, stride).blend(-stride, negativeY);
+
+            // Cell indexes and sides ride in double lanes too, exact well past
+            // any map size, so every mask stays in the one species
+            DoubleVector sideDistX = firstX;
+            DoubleVector sideDistY = firstY;
+            DoubleVector stepsX = zero;
+            DoubleVector stepsY = zero;
+            DoubleVector mapIndex = DoubleVector.broadcast(DOUBLES, startIndex);
+            DoubleVector side = zero;
+            DoubleVector missed = zero;
+            DoubleVector handedOff = zero;
+            VectorMask<Double> active = inRange;
+            long steps = 0;
+
+            while (active.anyTrue()) {
+                steps += active.trueCount();
+
+                // Per lane: step in x when its x boundary is nearer, else in y
+                VectorMask<Double> nearerX = sideDistX.compare(VectorOperators.LT, sideDistY);
+                VectorMask<Double> stepX = nearerX.and(active);
+                VectorMask<Double> stepY = nearerX.not().and(active);
+
+                // Lanes whose next boundary is past the view distance stop empty
+                VectorMask<Double> tooFar = sideDistX.blend(sideDistY, stepY)
+                        .compare(VectorOperators.GT, maxViewDistance).and(active);
+                VectorMask<Double> staying = tooFar.not();
+                missed = missed.blend(one, tooFar);
+                active = active.and(staying);
+                stepX = stepX.and(staying);
+                stepY = stepY.and(staying);
+
+                stepsX = stepsX.add(zero.blend(one, stepX));
+                stepsY = stepsY.add(zero.blend(one, stepY));
+                sideDistX = sideDistX.blend(firstX.add(stepsX.mul(deltaX)), stepX);
+                sideDistY = sideDistY.blend(firstY.add(stepsY.mul(deltaY)), stepY);
+                mapIndex = mapIndex.add(zero.blend(stepIndexX, stepX)).add(zero.blend(stepIndexY, stepY));
+                side = side.blend(zero, stepX).blend(one, stepY);
+
+                // Look up every lane's cell and retire the live ones on a wall.
+                // Lane by lane through a scratch array: JDK 17 compiles
+                // neither the gather nor the double-to-int convert to vector
+                // code at this shape. Retired lanes stay put on a cell inside
+                // the padded grid, so every lookup is in bounds
+                mapIndex.intoArray(laneIndexes, x);
+                for (int lane = x; lane < x + LANES; lane++) {
+                    laneTiles[lane] = tiles.tileAt((int)laneIndexes[lane]) & 0xFF;
+                }
+                DoubleVector tile = DoubleVector.fromArray(DOUBLES, laneTiles, x);
+                VectorMask<Double> scalarOnly = tile.compare(VectorOperators.EQ, Map.GLASS)
+                        .or(tile.compare(VectorOperators.EQ, Map.GRATE))
+                        .or(tile.compare(VectorOperators.EQ, Map.DOOR)).and(active);
+                handedOff = handedOff.blend(one, scalarOnly);
+                active = active.and(scalarOnly.not()).and(tile.compare(VectorOperators.NE, Map.WALL));
+            }
+
+            mapIndex.intoArray(laneIndexes, x);
+            side.blend(Renderer.NO_HIT, missed.compare(VectorOperators.NE, zero))
+                    .blend(PacketCaster.HANDED_OFF, handedOff.compare(VectorOperators.NE, zero))
+                    .intoArray(laneSides, x);
+            return steps;
+        }
+
+        /** Copy the first lanes of the packet at column x out of the scratch. */
+        void finish(int x, int lanes, int[] hitIndexes, int[] hitSides) {
+            for (int column = x; column < x + lanes; column++) {
+                hitIndexes[column] = (int)laneIndexes[column];
+                hitSides[column] = (int)laneSides[column];
+            }
+        }
+    }
+}
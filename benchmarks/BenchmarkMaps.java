@@ -0,0 +1,42 @@
+package com.example.raycastinggame;
+
+import java.util.Random;
+
+/**
+ * Map layouts shared by the JMH benchmarks. Every layout has a solid
+ * border and an empty centre cell for the camera.
+ */
+final class BenchmarkMaps {
+    // Fraction of interior cells that are walls in the dense layout
+    private static final double DENSE_FILL = 0.3;
+    private static final long SEED = 42;
+
+    private BenchmarkMaps() {
+    }
+
+    static Map create(int size, String layout) {
+        int[][] data = new int[size][size];
+        Random random = new Random(SEED);
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean border = x == 0 || y == 0 || x == size - 1 || y == size - 1;
+                if (border) {
+                    data[y][x] = 1;
+                } else if ("dense".equals(layout)) {
+                    data[y][x] = random.nextDouble() < DENSE_FILL ? 1 : 0;
+                } else if (!"open".equals(layout)) {
+                    throw new IllegalArgumentException("Unknown layout " + layout);
+                }
+            }
+        }
+
+        data[size / 2][size / 2] = 0;
+        return new Map(data);
+    }
+
+    // Camera in the middle of the centre cell, looking along +x
+    static Player centrePlayer(int size) {
+        return new Player(size / 2 + 0.5, size / 2 + 0.5, 1, 0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.raycastinggame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same level and camera drawn by both engines, flat shaded on one
+ * thread: the grid Renderer casting through Map cells, and a BspRenderer
+ * over the map's walls as segments. Both frames come out the same.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+    @Param({"640", "1920"})
+    public int width;
+
+    @Param({"16", "256", "4096"})
+    public int mapSize;
+
+    @Param({"open", "dense"})
+    public String layout;
+
+    private Renderer grid;
+    private BspRenderer bsp;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map map = BenchmarkMaps.create(mapSize, layout);
+        int height = width * 9 / 16;
+
+        grid = new Renderer(map, BenchmarkMaps.centrePlayer(mapSize), width, height);
+        grid.setMode(RenderMode.FRAMEBUFFER);
+
+        BspTree tree = BspTree.build(BspTree.segmentsOf(map));
+        bsp = new BspRenderer(tree, BenchmarkMaps.centrePlayer(mapSize), width, height);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        grid.shutdown();
+    }
+
+    @Benchmark
+    public int[] gridFrame() {
+        grid.renderFrame();
+        return grid.getPixels();
+    }
+
+    @Benchmark
+    public int[] bspFrame() {
+        bsp.renderFrame();
+        return bsp.getPixels();
+    }
+}
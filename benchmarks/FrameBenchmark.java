@@ -0,0 +1,81 @@
+package com.example.raycastinggame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole frame through the headless Renderer on one thread: the ray
+ * casting stage alone, and casting plus framebuffer rasterization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+    @Param({"640", "1280", "1920"})
+    public int width;
+
+    @Param({"16", "256", "4096"})
+    public int mapSize;
+
+    @Param({"open", "dense"})
+    public String layout;
+
+    @Param({"true", "false"})
+    public boolean emptySpaceSkipping;
+
+    @Param({"true", "false"})
+    public boolean spanCoherence;
+
+    private Renderer castOnly;
+    private Renderer castAndRaster;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map map = BenchmarkMaps.create(mapSize, layout);
+        int height = width * 9 / 16;
+
+        // Canvas mode without a Canvas stops renderFrame after the casting stage
+        castOnly = new Renderer(map, BenchmarkMaps.centrePlayer(mapSize), width, height);
+        castOnly.setMode(RenderMode.CANVAS);
+        castOnly.setEmptySpaceSkipping(emptySpaceSkipping);
+        castOnly.setSpanCoherence(spanCoherence);
+
+        castAndRaster = new Renderer(map, BenchmarkMaps.centrePlayer(mapSize), width, height);
+        castAndRaster.setMode(RenderMode.FRAMEBUFFER);
+        castAndRaster.setEmptySpaceSkipping(emptySpaceSkipping);
+        castAndRaster.setSpanCoherence(spanCoherence);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        castOnly.shutdown();
+        castAndRaster.shutdown();
+    }
+
+    @Benchmark
+    public void raycast() {
+        castOnly.renderFrame();
+    }
+
+    @Benchmark
+    public int[] raycastAndRasterize() {
+        castAndRaster.renderFrame();
+        return castAndRaster.getPixels();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.raycastinggame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A textured, floor-cast frame into a row-major and a column-major
+ * framebuffer, each ending with the rows that would be uploaded, so the
+ * column-major frame pays for its transpose.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+    @Param({"1920", "3840"})
+    public int width;
+
+    @Param({"false", "true"})
+    public boolean columnMajor;
+
+    private Renderer renderer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map map = BenchmarkMaps.create(256, "dense");
+        renderer = new Renderer(map, BenchmarkMaps.centrePlayer(256), width, width * 9 / 16);
+        renderer.setMode(RenderMode.FRAMEBUFFER);
+        renderer.setTextureAtlas(TextureAtlas.createDefault());
+        renderer.setColumnMajor(columnMajor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Benchmark
+    public int[] renderAndPresent() {
+        renderer.renderFrame();
+        return renderer.getRowPixels();
+    }
+
+    @Benchmark
+    public int[] transpose() {
+        return renderer.getRowPixels();
+    }
+}
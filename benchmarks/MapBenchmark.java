@@ -0,0 +1,59 @@
+package com.example.raycastinggame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Map.isWall over a batch of scattered cells, both inside the
+ * grid and just outside it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"16", "256", "4096"})
+    public int mapSize;
+
+    @Param({"open", "dense"})
+    public String layout;
+
+    private Map map;
+    private final int[] xs = new int[LOOKUPS];
+    private final int[] ys = new int[LOOKUPS];
+
+    @Setup
+    public void setUp() {
+        map = BenchmarkMaps.create(mapSize, layout);
+
+        Random random = new Random(7);
+        for (int i = 0; i < LOOKUPS; i++) {
+            xs[i] = random.nextInt(mapSize + 2) - 1;
+            ys[i] = random.nextInt(mapSize + 2) - 1;
+        }
+    }
+
+    @Benchmark
+    public void isWall(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(map.isWall(xs[i], ys[i]));
+        }
+    }
+}
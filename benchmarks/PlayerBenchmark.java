@@ -0,0 +1,40 @@
+package com.example.raycastinggame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Player.rotate with the step size of one 60 Hz frame of turning.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayerBenchmark {
+    private Player player;
+    private double angle;
+
+    @Setup
+    public void setUp() {
+        player = new Player(2.5, 2.5, 1, 0);
+        angle = 2.0 / 60.0;
+    }
+
+    @Benchmark
+    public double rotate() {
+        player.rotate(angle);
+        return player.getDirX();
+    }
+}
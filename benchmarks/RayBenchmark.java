@@ -0,0 +1,227 @@
+package com.example.raycastinggame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One DDA ray at a time. castRay is the original step loop through
+ * Map.isWall, castRayFlat the flat-index loop Renderer.castColumns ran over
+ * a snapshot of the padded grid before it skipped empty blocks; it is not
+ * kept in sync with the renderer. Rays fan out over the full circle from the
+ * map centre so open maps measure long rays and dense maps short ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RayBenchmark {
+    private static final int RAYS = 64;
+
+    @Param({"16", "256", "4096"})
+    public int mapSize;
+
+    @Param({"open", "dense"})
+    public String layout;
+
+    private Map map;
+    private double posX;
+    private double posY;
+    private final double[] rayDirXs = new double[RAYS];
+    private final double[] rayDirYs = new double[RAYS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        map = BenchmarkMaps.create(mapSize, layout);
+        posX = mapSize / 2 + 0.5;
+        posY = mapSize / 2 + 0.5;
+
+        // Offset from the axes so no ray is exactly horizontal or vertical
+        for (int i = 0; i < RAYS; i++) {
+            double angle = (i + 0.37) * 2 * Math.PI / RAYS;
+            rayDirXs[i] = Math.cos(angle);
+            rayDirYs[i] = Math.sin(angle);
+        }
+    }
+
+    @Benchmark
+    public double singleRay() {
+        int i = next;
+        next = (i + 1) & (RAYS - 1);
+        return castRay(rayDirXs[i], rayDirYs[i]);
+    }
+
+    @Benchmark
+    public void allDirections(Blackhole blackhole) {
+        for (int i = 0; i < RAYS; i++) {
+            blackhole.consume(castRay(rayDirXs[i], rayDirYs[i]));
+        }
+    }
+
+    @Benchmark
+    public double singleRayFlat() {
+        int i = next;
+        next = (i + 1) & (RAYS - 1);
+        return castRayFlat(rayDirXs[i], rayDirYs[i]);
+    }
+
+    @Benchmark
+    public void allDirectionsFlat(Blackhole blackhole) {
+        for (int i = 0; i < RAYS; i++) {
+            blackhole.consume(castRayFlat(rayDirXs[i], rayDirYs[i]));
+        }
+    }
+
+    private double castRay(double rayDirX, double rayDirY) {
+        // Which box of the map we're in
+        int mapX = (int)posX;
+        int mapY = (int)posY;
+
+        // Length of ray from current position to next x or y-side
+        double sideDistX;
+        double sideDistY;
+
+        // Length of ray from one x or y-side to next x or y-side
+        double deltaDistX = Math.abs(1 / rayDirX);
+        double deltaDistY = Math.abs(1 / rayDirY);
+
+        // What direction to step in x or y direction (either +1 or -1)
+        int stepX;
+        int stepY;
+
+        // Variables for hit detection
+        boolean hit = false;
+        int side = 0; // was a NS or a EW wall hit?
+
+        // Calculate step and initial sideDist
+        if (rayDirX < 0) {
+            stepX = -1;
+            sideDistX = (posX - mapX) * deltaDistX;
+        } else {
+            stepX = 1;
+            sideDistX = (mapX + 1.0 - posX) * deltaDistX;
+        }
+
+        if (rayDirY < 0) {
+            stepY = -1;
+            sideDistY = (posY - mapY) * deltaDistY;
+        } else {
+            stepY = 1;
+            sideDistY = (mapY + 1.0 - posY) * deltaDistY;
+        }
+
+        // Perform DDA (Digital Differential Analysis)
+        while (!hit) {
+            // Jump to next map square, either in x-direction, or in y-direction
+            if (sideDistX < sideDistY) {
+                sideDistX += deltaDistX;
+                mapX += stepX;
+                side = 0;
+            } else {
+                sideDistY += deltaDistY;
+                mapY += stepY;
+                side = 1;
+            }
+
+            // Check if ray has hit a wall
+            if (map.isWall(mapX, mapY)) {
+                hit = true;
+            }
+        }
+
+        // Calculate distance projected on camera direction
+        if (side == 0) {
+            return (mapX - posX + (1 - stepX) / 2) / rayDirX;
+        } else {
+            return (mapY - posY + (1 - stepY) / 2) / rayDirY;
+        }
+    }
+
+    private double castRayFlat(double rayDirX, double rayDirY) {
+        final MapSnapshot tiles = map.snapshot();
+        final int stride = map.getStride();
+
+        // Which box of the map we're in
+        int mapX = (int)posX;
+        int mapY = (int)posY;
+        int mapIndex = map.index(mapX, mapY);
+
+        // Length of ray from current position to next x or y-side
+        double sideDistX;
+        double sideDistY;
+
+        // Length of ray from one x or y-side to next x or y-side
+        double deltaDistX = Math.abs(1 / rayDirX);
+        double deltaDistY = Math.abs(1 / rayDirY);
+
+        // What direction to step in x or y direction (either +1 or -1)
+        int stepX;
+        int stepY;
+
+        // Variables for hit detection
+        boolean hit = false;
+        int side = 0; // was a NS or a EW wall hit?
+
+        // Calculate step and initial sideDist
+        if (rayDirX < 0) {
+            stepX = -1;
+            sideDistX = (posX - mapX) * deltaDistX;
+        } else {
+            stepX = 1;
+            sideDistX = (mapX + 1.0 - posX) * deltaDistX;
+        }
+
+        if (rayDirY < 0) {
+            stepY = -1;
+            sideDistY = (posY - mapY) * deltaDistY;
+        } else {
+            stepY = 1;
+            sideDistY = (mapY + 1.0 - posY) * deltaDistY;
+        }
+
+        // Stepping a row in the flat grid moves by the stride
+        int stepIndexY = stepY * stride;
+
+        // Perform DDA (Digital Differential Analysis)
+        while (!hit) {
+            // Jump to next map square, either in x-direction, or in y-direction
+            if (sideDistX < sideDistY) {
+                sideDistX += deltaDistX;
+                mapX += stepX;
+                mapIndex += stepX;
+                side = 0;
+            } else {
+                sideDistY += deltaDistY;
+                mapY += stepY;
+                mapIndex += stepIndexY;
+                side = 1;
+            }
+
+            // Check if ray has hit a wall; the border ring stops every ray
+            if (tiles.tileAt(mapIndex) == Map.WALL) {
+                hit = true;
+            }
+        }
+
+        // Calculate distance projected on camera direction
+        if (side == 0) {
+            return (mapX - posX + (1 - stepX) / 2) / rayDirX;
+        } else {
+            return (mapY - posY + (1 - stepY) / 2) / rayDirY;
+        }
+    }
+}